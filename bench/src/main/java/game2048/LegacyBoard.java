@@ -0,0 +1,181 @@
+package game2048;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The original int[][] / LinkedList move pipeline from GameLogic, before the
+ * board was packed into a long. Kept only so MoveBenchmark can compare the
+ * current engine against it. Not used by the game.
+ */
+public class LegacyBoard {
+
+    private final double tileProbability = 0.9;
+
+    private int[][] board = new int[4][4];
+
+    public void setBoard(int[][] board2) {
+        for (int i = 0; i < 4; i++) {
+            board[i] = Arrays.copyOf(board2[i], 4);
+        }
+    }
+
+    public void addTile() {
+        List<Integer> empty = emptySpaces();
+        if (empty.isEmpty()) {
+            return;
+        }
+        int coord = empty.get((int) (Math.random() * empty.size()));
+        board[(int) (coord / 10)][coord % 10] = Math.random() < tileProbability ? 2 : 4;
+    }
+
+    public int slideUp() {
+        int moveScore = 0;
+
+        int[][] boardCopy = new int[4][4];
+        for (int i = 0; i < board.length; i++) {
+            boardCopy[i] = Arrays.copyOf(board[i], 4);
+        }
+
+        for (int col = 0; col < boardCopy[0].length; col++) {
+            LinkedList<Integer> shiftedCol = new LinkedList<Integer>();
+            for (int row = 0; row < boardCopy.length; row++) {
+                if (boardCopy[row][col] > 0) {
+                    shiftedCol.add(boardCopy[row][col]);
+                }
+            }
+
+            LinkedList<Integer> mergedCol = new LinkedList<Integer>();
+            while (shiftedCol.size() > 1) {
+                int head = shiftedCol.pop();
+                int next = shiftedCol.peek();
+                if (head == next) {
+                    mergedCol.add(head * 2);
+                    moveScore += head * 2;
+                    shiftedCol.pop();
+                } else {
+                    mergedCol.add(head);
+                }
+            }
+            mergedCol.addAll(shiftedCol);
+
+            for (int row = 0; row < boardCopy.length; row++) {
+                if (mergedCol.size() > 0) {
+                    board[row][col] = mergedCol.pop();
+                } else {
+                    board[row][col] = 0;
+                }
+            }
+        }
+
+        return moveScore;
+    }
+
+    public boolean moveTiles(int direction) {
+        int[][] boardCopy = new int[4][4];
+        for (int i = 0; i < board.length; i++) {
+            boardCopy[i] = Arrays.copyOf(board[i], 4);
+        }
+
+        if (direction == 2 || direction == 4) {
+            transposeBoard();
+        }
+        if (direction == 2 || direction == 3) {
+            reverseBoard();
+        }
+
+        slideUp();
+
+        if (direction == 2 || direction == 3) {
+            reverseBoard();
+        }
+        if (direction == 2 || direction == 4) {
+            transposeBoard();
+        }
+
+        for (int row = 0; row < boardCopy.length; row++) {
+            for (int col = 0; col < boardCopy[0].length; col++) {
+                if (board[row][col] != boardCopy[row][col]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public void transposeBoard() {
+        int[][] transposed = new int[4][4];
+        for (int row = 0; row < board.length; row++) {
+            for (int col = 0; col < board[0].length; col++) {
+                transposed[col][row] = board[row][col];
+            }
+        }
+        board = transposed;
+    }
+
+    public void reverseBoard() {
+        int[][] reversed = new int[4][4];
+        for (int col = 0; col < board[0].length; col++) {
+            for (int row = 0; row < board.length; row++) {
+                reversed[board.length - 1 - row][col] = board[row][col];
+            }
+        }
+        board = reversed;
+    }
+
+    // Returns true if the game is lost
+    public boolean checkLoss() {
+        if (!emptySpaces().isEmpty()) {
+            return false;
+        }
+
+        for (int col = 0; col < board[0].length; col++) {
+            LinkedList<Integer> checkingCol = new LinkedList<Integer>();
+            for (int row = 0; row < board.length; row++) {
+                checkingCol.add(board[row][col]);
+            }
+            while (checkingCol.size() > 1) {
+                int head = checkingCol.pop();
+                int next = checkingCol.peek();
+                if (head == next) {
+                    return false;
+                }
+            }
+        }
+
+        for (int row = 0; row < board.length; row++) {
+            LinkedList<Integer> checkingCol = new LinkedList<Integer>();
+            for (int col = 0; col < board[0].length; col++) {
+                checkingCol.add(board[row][col]);
+            }
+            while (checkingCol.size() > 1) {
+                int head = checkingCol.pop();
+                int next = checkingCol.peek();
+                if (head == next) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    public List<Integer> emptySpaces() {
+        List<Integer> empty = new ArrayList<Integer>();
+        for (int row = 0; row < board.length; row++) {
+            for (int col = 0; col < board[row].length; col++) {
+                if (board[row][col] == 0) {
+                    empty.add((row * 10) + col);
+                }
+            }
+        }
+        return empty;
+    }
+
+    public int getTile(int row, int col) {
+        return board[row][col];
+    }
+
+}
@@ -0,0 +1,279 @@
+package game2048;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the core move pipeline: slideUp, moveTiles, checkLoss,
+ * emptySpaces and addTile on a sparse, a dense and a nearly lost board, plus
+ * a full random game from start to finish.
+ *
+ * Every benchmark has a ...Legacy twin running LegacyBoard, the original
+ * int[][] / LinkedList engine, so an engine change can be judged against both
+ * the previous commit and the starting point. The exception is batchMove,
+ * Bitboard's batch API against the same boards moved one call at a time.
+ *
+ * Run with -prof gc for bytes allocated per op (gc.alloc.rate.norm), see
+ * bench/pom.xml.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MoveBenchmark {
+
+    // STATE ===================================================================
+
+    /*
+     * One board and 3 of its symmetries, cycled through so the JIT can't hoist
+     * the work out of the loop.
+     */
+    @State(Scope.Thread)
+    public static class Boards {
+
+        @Param({ "sparse", "dense", "nearLoss" })
+        public String board;
+
+        long[] variants;
+        int[][][] values;
+        GameLogic logic;
+        LegacyBoard legacy;
+        private int next;
+
+        @Setup
+        public void setUp() {
+            long packed = Bitboard.fromArray(board(board));
+            variants = new long[] { packed, Bitboard.transpose(packed), Bitboard.reverse(packed),
+                Bitboard.reverse(Bitboard.transpose(packed)) };
+            values = new int[4][][];
+            for (int v = 0; v < 4; v++) {
+                values[v] = Bitboard.toArray(variants[v]);
+            }
+            logic = new GameLogic(new SplittableRandom(1));
+            legacy = new LegacyBoard();
+        }
+
+        // Index of the next variant, the one after it every 4 calls is a new direction
+        int next() {
+            return next++;
+        }
+    }
+
+    private static int[][] board(String name) {
+        switch (name) {
+            case "sparse":
+                return new int[][] {
+                    { 0, 0, 0, 0 },
+                    { 0, 2, 0, 0 },
+                    { 0, 0, 0, 0 },
+                    { 0, 0, 4, 0 } };
+            case "dense":
+                return new int[][] {
+                    { 2, 4, 8, 0 },
+                    { 4, 4, 16, 2 },
+                    { 8, 16, 0, 32 },
+                    { 2, 0, 64, 128 } };
+            case "nearLoss":
+                return new int[][] {
+                    { 2, 4, 8, 16 },
+                    { 4, 8, 16, 32 },
+                    { 8, 16, 32, 64 },
+                    { 16, 32, 64, 64 } };
+            default:
+                throw new IllegalArgumentException("Unknown board: " + name);
+        }
+    }
+
+    // A batch of random boards, moved in every direction in turn
+    @State(Scope.Thread)
+    public static class Batch {
+
+        static final int SIZE = 1024;
+
+        final long[] boards = new long[SIZE];
+        final long[] moved = new long[SIZE];
+        final int[] scores = new int[SIZE];
+        final boolean[] changed = new boolean[SIZE];
+        private int next;
+
+        @Setup
+        public void setUp() {
+            SplittableRandom rng = new SplittableRandom(1);
+            for (int i = 0; i < SIZE; i++) {
+                for (int cell = 0; cell < 16; cell++) {
+                    boards[i] |= (long) rng.nextInt(6) << (4 * cell);
+                }
+            }
+        }
+
+        int nextDirection() {
+            return next++ % 4 + 1;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Game {
+
+        GameLogic logic;
+        LegacyBoard legacy;
+        SplittableRandom rng;
+
+        @Setup
+        public void setUp() {
+            logic = new GameLogic(new SplittableRandom(1));
+            legacy = new LegacyBoard();
+            rng = new SplittableRandom(1);
+        }
+    }
+
+    // BOARD BENCHMARKS ========================================================
+
+    @Benchmark
+    public int slideUp(Boards b) {
+        b.logic.setPackedBoard(b.variants[b.next() & 3]);
+        return b.logic.slideUp();
+    }
+
+    @Benchmark
+    public int slideUpLegacy(Boards b) {
+        b.legacy.setBoard(b.values[b.next() & 3]);
+        return b.legacy.slideUp();
+    }
+
+    @Benchmark
+    public boolean moveTiles(Boards b) {
+        int i = b.next();
+        b.logic.setPackedBoard(b.variants[i & 3]);
+        return b.logic.moveTiles(((i >>> 2) & 3) + 1);
+    }
+
+    @Benchmark
+    public boolean moveTilesLegacy(Boards b) {
+        int i = b.next();
+        b.legacy.setBoard(b.values[i & 3]);
+        return b.legacy.moveTiles(((i >>> 2) & 3) + 1);
+    }
+
+    @Benchmark
+    public GameState checkLoss(Boards b) {
+        b.logic.setPackedBoard(b.variants[b.next() & 3]);
+        b.logic.checkLoss();
+        return b.logic.getGameState();
+    }
+
+    @Benchmark
+    public boolean checkLossLegacy(Boards b) {
+        b.legacy.setBoard(b.values[b.next() & 3]);
+        return b.legacy.checkLoss();
+    }
+
+    @Benchmark
+    public int emptySpaces(Boards b) {
+        b.logic.setPackedBoard(b.variants[b.next() & 3]);
+        return b.logic.emptySpaces().size();
+    }
+
+    @Benchmark
+    public int emptySpacesLegacy(Boards b) {
+        b.legacy.setBoard(b.values[b.next() & 3]);
+        return b.legacy.emptySpaces().size();
+    }
+
+    @Benchmark
+    public long addTile(Boards b) {
+        b.logic.setPackedBoard(b.variants[b.next() & 3]);
+        b.logic.addTile();
+        return b.logic.getPackedBoard();
+    }
+
+    @Benchmark
+    public int addTileLegacy(Boards b) {
+        b.legacy.setBoard(b.values[b.next() & 3]);
+        b.legacy.addTile();
+        return b.legacy.getTile(0, 0);
+    }
+
+    // BATCH MOVES =============================================================
+
+    // One op is one board of the batch
+    @Benchmark
+    @OperationsPerInvocation(Batch.SIZE)
+    public long batchMove(Batch b) {
+        Bitboard.move(b.boards, Batch.SIZE, b.nextDirection(), b.moved, b.scores, b.changed);
+        return b.moved[Batch.SIZE - 1] + b.scores[Batch.SIZE - 1] + (b.changed[0] ? 1 : 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Batch.SIZE)
+    public long batchMoveSingle(Batch b) {
+        int direction = b.nextDirection();
+        for (int i = 0; i < Batch.SIZE; i++) {
+            b.moved[i] = Bitboard.move(b.boards[i], direction);
+            b.scores[i] = Bitboard.score(b.boards[i], direction);
+            b.changed[i] = b.moved[i] != b.boards[i];
+        }
+        return b.moved[Batch.SIZE - 1] + b.scores[Batch.SIZE - 1] + (b.changed[0] ? 1 : 0);
+    }
+
+    // FULL GAMES ==============================================================
+
+    // One op is a whole game: random directions until no direction changes the board
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int fullRandomGame(Game g) {
+        int moves = 0;
+        g.logic.setPackedBoard(0);
+        g.logic.addTile();
+        g.logic.addTile();
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            int first = g.rng.nextInt(4);
+            for (int d = 0; d < 4 && !moved; d++) {
+                moved = g.logic.moveTiles((first + d) % 4 + 1);
+            }
+            if (moved) {
+                g.logic.addTile();
+                moves++;
+            }
+        }
+        return moves;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int fullRandomGameLegacy(Game g) {
+        int moves = 0;
+        g.legacy.setBoard(new int[4][4]);
+        g.legacy.addTile();
+        g.legacy.addTile();
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            int first = g.rng.nextInt(4);
+            for (int d = 0; d < 4 && !moved; d++) {
+                moved = g.legacy.moveTiles((first + d) % 4 + 1);
+            }
+            if (moved) {
+                g.legacy.addTile();
+                moves++;
+            }
+        }
+        return moves;
+    }
+
+}
@@ -0,0 +1,467 @@
+import java.util.random.RandomGenerator;
+
+/**
+ * Bitboard helpers for a 4x4 board packed into a single long.
+ *
+ * Every tile is stored as a 4-bit exponent (0 = empty, 1 = 2, 2 = 4, ... 15 =
+ * 32768). Tile (row, col) lives in nibble (row * 4 + col), counting from the
+ * lowest bits, so each row is one 16-bit chunk with column 0 in its low nibble.
+ *
+ * All methods are static and work on plain longs, so moves, transposes and
+ * reversals never allocate.
+ */
+public final class Bitboard {
+
+    public static final int SIZE = 4;
+    public static final int CELLS = SIZE * SIZE;
+
+    // Largest exponent a nibble can hold (2^15 = 32768)
+    public static final int MAX_EXPONENT = 15;
+
+    private static final long ROW_MASK = 0xFFFFL;
+    private static final long NIBBLE_MASK = 0xFL;
+
+    private Bitboard() {
+    }
+
+    // TILE ACCESS ==============================================================
+
+    public static int getExponent(long board, int row, int col) {
+        return (int) ((board >>> shift(row, col)) & NIBBLE_MASK);
+    }
+
+    public static long setExponent(long board, int row, int col, int exponent) {
+        int shift = shift(row, col);
+        return (board & ~(NIBBLE_MASK << shift)) | (((long) exponent & NIBBLE_MASK) << shift);
+    }
+
+    public static int getTile(long board, int row, int col) {
+        return toValue(getExponent(board, row, col));
+    }
+
+    // 0 -> 0, 1 -> 2, 2 -> 4, ...
+    public static int toValue(int exponent) {
+        return exponent == 0 ? 0 : 1 << exponent;
+    }
+
+    // 0 -> 0, 2 -> 1, 4 -> 2, ...
+    public static int toExponent(int value) {
+        if (value == 0) {
+            return 0;
+        }
+        if (value < 2 || Integer.bitCount(value) != 1 || value > (1 << MAX_EXPONENT)) {
+            throw new IllegalArgumentException("Not a valid tile value: " + value);
+        }
+        return Integer.numberOfTrailingZeros(value);
+    }
+
+    private static int shift(int row, int col) {
+        return ((row * SIZE) + col) * 4;
+    }
+
+    // CONVERSION ===============================================================
+
+    public static long fromArray(int[][] values) {
+        long board = 0;
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                board = setExponent(board, row, col, toExponent(values[row][col]));
+            }
+        }
+        return board;
+    }
+
+    public static int[][] toArray(long board) {
+        int[][] values = new int[SIZE][SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                values[row][col] = getTile(board, row, col);
+            }
+        }
+        return values;
+    }
+
+    // Unpack into 16 exponents, one per byte, row by row (see FlatBoard)
+    public static void toExponents(long board, byte[] cells, int offset) {
+        for (int i = 0; i < CELLS; i++) {
+            cells[offset + i] = (byte) ((board >>> (i * 4)) & NIBBLE_MASK);
+        }
+    }
+
+    public static long fromExponents(byte[] cells, int offset) {
+        long board = 0;
+        for (int i = 0; i < CELLS; i++) {
+            board |= ((long) cells[offset + i] & NIBBLE_MASK) << (i * 4);
+        }
+        return board;
+    }
+
+    // BOARD MANIPULATION =======================================================
+
+    // transpose - rows -> cols, cols -> rows
+    public static long transpose(long x) {
+        long a1 = x & 0xF0F00F0FF0F00F0FL;
+        long a2 = x & 0x0000F0F00000F0F0L;
+        long a3 = x & 0x0F0F00000F0F0000L;
+        long a = a1 | (a2 << 12) | (a3 >>> 12);
+        long b1 = a & 0xFF00FF0000FF00FFL;
+        long b2 = a & 0x00FF00FF00000000L;
+        long b3 = a & 0x00000000FF00FF00L;
+        return b1 | (b2 >>> 24) | (b3 << 24);
+    }
+
+    // reversing values in each col (row 0 <-> row 3, row 1 <-> row 2)
+    public static long reverse(long x) {
+        return ((x & ROW_MASK) << 48)
+                | ((x & (ROW_MASK << 16)) << 16)
+                | ((x >>> 16) & (ROW_MASK << 16))
+                | (x >>> 48);
+    }
+
+    // reversing values in each row (col 0 <-> col 3, col 1 <-> col 2)
+    public static long mirror(long x) {
+        return ((x & 0x000F000F000F000FL) << 12)
+                | ((x & 0x00F000F000F000F0L) << 4)
+                | ((x >>> 4) & 0x00F000F000F000F0L)
+                | ((x >>> 12) & 0x000F000F000F000FL);
+    }
+
+    /*
+     * Smallest of the board's 8 rotations and reflections, built from
+     * transpose, reverse and mirror. Boards that are rotated or mirrored copies
+     * of each other have the same canonical board.
+     */
+    public static long canonical(long board) {
+        long transposed = transpose(board);
+        long min = Math.min(board, reverse(board));
+        min = Math.min(min, Math.min(mirror(board), reverse(mirror(board))));
+        min = Math.min(min, Math.min(transposed, reverse(transposed)));
+        return Math.min(min, Math.min(mirror(transposed), reverse(mirror(transposed))));
+    }
+
+    // reversing values in a 16-bit row (col 0 <-> col 3, col 1 <-> col 2)
+    public static int reverseRow(int row) {
+        return ((row & 0xF) << 12) | ((row & 0xF0) << 4) | ((row >>> 4) & 0xF0) | (row >>> 12);
+    }
+
+    // MOVE LOGIC ===============================================================
+
+    /*
+     * Slide a single 16-bit row towards column 0 and merge equal neighbours.
+     *
+     * Returns the new row in bits 0-15, a mask of the exponents created by merges
+     * in bits 16-31 (bit e set if a 2^e tile was created) and the score gained
+     * from bit 32 up. Tiles at MAX_EXPONENT are never merged so a nibble can't
+     * overflow.
+     *
+     * Only used to build the lookup tables below, moves go through the tables.
+     */
+    public static long slideRowLeft(int row) {
+        int result = 0;
+        int target = 0;
+        int pending = 0;
+        int merged = 0;
+        long moveScore = 0;
+
+        for (int col = 0; col < SIZE; col++) {
+            int exponent = (row >>> (col * 4)) & 0xF;
+            if (exponent == 0) {
+                continue;
+            }
+
+            if (pending == exponent && exponent < MAX_EXPONENT) {
+                // Merge 2 tiles (ex. 2 2 = 4)
+                result |= (exponent + 1) << (target * 4);
+                moveScore += 1L << (exponent + 1);
+                merged |= 1 << (exponent + 1);
+                target++;
+                pending = 0;
+            } else {
+                if (pending != 0) {
+                    result |= pending << (target * 4);
+                    target++;
+                }
+                pending = exponent;
+            }
+        }
+
+        // Add rest of tile that is still pending
+        if (pending != 0) {
+            result |= pending << (target * 4);
+        }
+
+        return (moveScore << 32) | ((long) merged << 16) | result;
+    }
+
+    /*
+     * Move every tile in the given direction. 1 - up, 2 - right, 3 - down, 4 - left,
+     * anything else throws IllegalArgumentException (as do score and mergedExponents)
+     *
+     * Left and right look up each row directly. Up and down look up each column,
+     * read as a row of the transposed board, and get back the column already
+     * spread out into its nibble positions.
+     */
+    public static long move(long board, int direction) {
+        switch (direction) {
+            case 1:
+                return moveColumns(transpose(board), COL_UP);
+            case 2:
+                return moveRows(board, ROW_RIGHT);
+            case 3:
+                return moveColumns(transpose(board), COL_DOWN);
+            case 4:
+                return moveRows(board, ROW_LEFT);
+            default:
+                throw invalidDirection(direction);
+        }
+    }
+
+    private static IllegalArgumentException invalidDirection(int direction) {
+        return new IllegalArgumentException("Direction must be 1 - 4: " + direction);
+    }
+
+    private static long moveRows(long board, char[] table) {
+        return (long) table[(int) (board & ROW_MASK)]
+                | ((long) table[(int) ((board >>> 16) & ROW_MASK)] << 16)
+                | ((long) table[(int) ((board >>> 32) & ROW_MASK)] << 32)
+                | ((long) table[(int) (board >>> 48)] << 48);
+    }
+
+    private static long moveColumns(long transposed, long[] table) {
+        return table[(int) (transposed & ROW_MASK)]
+                | (table[(int) ((transposed >>> 16) & ROW_MASK)] << 4)
+                | (table[(int) ((transposed >>> 32) & ROW_MASK)] << 8)
+                | (table[(int) (transposed >>> 48)] << 12);
+    }
+
+    // Score gained by moving the board in the given direction
+    public static int score(long board, int direction) {
+        if (direction < 1 || direction > 4) {
+            throw invalidDirection(direction);
+        }
+        long oriented = (direction == 1 || direction == 3) ? transpose(board) : board;
+        int[] table = (direction == 2 || direction == 3) ? SCORE_RIGHT : SCORE_LEFT;
+
+        return table[(int) (oriented & ROW_MASK)]
+                + table[(int) ((oriented >>> 16) & ROW_MASK)]
+                + table[(int) ((oriented >>> 32) & ROW_MASK)]
+                + table[(int) (oriented >>> 48)];
+    }
+
+    // Mask of the exponents created by merges when moving in the given direction
+    public static int mergedExponents(long board, int direction) {
+        if (direction < 1 || direction > 4) {
+            throw invalidDirection(direction);
+        }
+        long oriented = (direction == 1 || direction == 3) ? transpose(board) : board;
+        char[] table = (direction == 2 || direction == 3) ? MERGED_RIGHT : MERGED_LEFT;
+
+        return table[(int) (oriented & ROW_MASK)]
+                | table[(int) ((oriented >>> 16) & ROW_MASK)]
+                | table[(int) ((oriented >>> 32) & ROW_MASK)]
+                | table[(int) (oriented >>> 48)];
+    }
+
+    // BATCH MOVES ==============================================================
+
+    /*
+     * Move boards[0 .. count) in the given direction: moved[i], scores[i] and
+     * changed[i] are move, score and move != board of boards[i]. scores and
+     * changed can be null if not needed; moved can't be boards.
+     *
+     * For evaluating many boards at once (searches, simulations). Arrays of
+     * primitives in and out and one simple loop per step, so the transposes
+     * and compares are left to the JIT to vectorize; the table lookups are
+     * gathers and stay one board at a time.
+     */
+    public static void move(long[] boards, int count, int direction, long[] moved, int[] scores,
+            boolean[] changed) {
+        if (moved == boards) {
+            throw new IllegalArgumentException("moved must be a different array from boards");
+        }
+        if (direction < 1 || direction > 4) {
+            throw invalidDirection(direction);
+        }
+
+        // Columns are moved as rows of the transposed board, transposed in place in moved
+        boolean vertical = direction == 1 || direction == 3;
+        long[] oriented = boards;
+        if (vertical) {
+            for (int i = 0; i < count; i++) {
+                moved[i] = transpose(boards[i]);
+            }
+            oriented = moved;
+        }
+
+        if (scores != null) {
+            int[] table = (direction == 2 || direction == 3) ? SCORE_RIGHT : SCORE_LEFT;
+            for (int i = 0; i < count; i++) {
+                long board = oriented[i];
+                scores[i] = table[(int) (board & ROW_MASK)]
+                        + table[(int) ((board >>> 16) & ROW_MASK)]
+                        + table[(int) ((board >>> 32) & ROW_MASK)]
+                        + table[(int) (board >>> 48)];
+            }
+        }
+
+        switch (direction) {
+            case 1:
+                for (int i = 0; i < count; i++) {
+                    moved[i] = moveColumns(moved[i], COL_UP);
+                }
+                break;
+            case 2:
+                for (int i = 0; i < count; i++) {
+                    moved[i] = moveRows(boards[i], ROW_RIGHT);
+                }
+                break;
+            case 3:
+                for (int i = 0; i < count; i++) {
+                    moved[i] = moveColumns(moved[i], COL_DOWN);
+                }
+                break;
+            case 4:
+                for (int i = 0; i < count; i++) {
+                    moved[i] = moveRows(boards[i], ROW_LEFT);
+                }
+                break;
+        }
+
+        if (changed != null) {
+            for (int i = 0; i < count; i++) {
+                changed[i] = moved[i] != boards[i];
+            }
+        }
+    }
+
+    // LOOKUP TABLES ============================================================
+
+    /*
+     * Every possible 16-bit row, slid towards column 0 (left) and column 3
+     * (right), with the score gained and the exponents created by merges. A row
+     * didn't move if its entry is the row itself.
+     *
+     * Columns are looked up as rows of the transposed board. COL_UP and COL_DOWN
+     * hold the slid column already spread out to nibbles 0, 4, 8 and 12 so it
+     * can be OR-ed back into the board without transposing again.
+     */
+    private static final int TABLE_SIZE = 1 << 16;
+    private static final char[] ROW_LEFT = new char[TABLE_SIZE];
+    private static final char[] ROW_RIGHT = new char[TABLE_SIZE];
+    private static final long[] COL_UP = new long[TABLE_SIZE];
+    private static final long[] COL_DOWN = new long[TABLE_SIZE];
+    private static final int[] SCORE_LEFT = new int[TABLE_SIZE];
+    private static final int[] SCORE_RIGHT = new int[TABLE_SIZE];
+    private static final char[] MERGED_LEFT = new char[TABLE_SIZE];
+    private static final char[] MERGED_RIGHT = new char[TABLE_SIZE];
+
+    static {
+        for (int row = 0; row < TABLE_SIZE; row++) {
+            long left = slideRowLeft(row);
+            long right = slideRowLeft(reverseRow(row));
+            int slidRight = reverseRow((int) (right & ROW_MASK));
+
+            ROW_LEFT[row] = (char) (left & ROW_MASK);
+            ROW_RIGHT[row] = (char) slidRight;
+            COL_UP[row] = unpackColumn((int) (left & ROW_MASK));
+            COL_DOWN[row] = unpackColumn(slidRight);
+            SCORE_LEFT[row] = (int) (left >>> 32);
+            SCORE_RIGHT[row] = (int) (right >>> 32);
+            MERGED_LEFT[row] = (char) ((left >>> 16) & ROW_MASK);
+            MERGED_RIGHT[row] = (char) ((right >>> 16) & ROW_MASK);
+        }
+    }
+
+    // Spread the 4 nibbles of a row out to nibbles 0, 4, 8 and 12 (column 0)
+    private static long unpackColumn(int row) {
+        long column = row;
+        return (column | (column << 12) | (column << 24) | (column << 36)) & 0x000F000F000F000FL;
+    }
+
+    // LEGAL MOVES ==============================================================
+
+    private static final long LOW_BITS = 0x1111111111111111L;
+    // Nibbles that have a right neighbour (col 0-2) / a neighbour below (row 0-2)
+    private static final long HAS_RIGHT = 0x0111011101110111L;
+    private static final long HAS_BELOW = 0x0000111111111111L;
+
+    // Bit 0 of every nibble set if that nibble is 0
+    private static long zeroNibbles(long x) {
+        x |= x >>> 1;
+        x |= x >>> 2;
+        return ~x & LOW_BITS;
+    }
+
+    /*
+     * True if any direction changes the board: there is an empty tile, or two
+     * neighbours are equal and below MAX_EXPONENT. Only bit operations, no
+     * moves are made.
+     */
+    public static boolean hasLegalMove(long board) {
+        if (zeroNibbles(board) != 0) {
+            return true;
+        }
+
+        // Bit 0 of every nibble set if the tile can't merge any more
+        long full = board & (board >>> 1) & (board >>> 2) & (board >>> 3) & LOW_BITS;
+        long horizontal = zeroNibbles(board ^ (board >>> 4)) & HAS_RIGHT;
+        long vertical = zeroNibbles(board ^ (board >>> 16)) & HAS_BELOW;
+
+        return ((horizontal | vertical) & ~full) != 0;
+    }
+
+    // Bit d set if moving in direction d changes the board (1 - up ... 4 - left)
+    public static int legalMoves(long board) {
+        int legal = 0;
+        for (int direction = 1; direction <= 4; direction++) {
+            if (move(board, direction) != board) {
+                legal |= 1 << direction;
+            }
+        }
+        return legal;
+    }
+
+    // EMPTY TILES ==============================================================
+
+    public static int emptyCount(long board) {
+        int count = 0;
+        for (int i = 0; i < CELLS; i++) {
+            if (((board >>> (i * 4)) & NIBBLE_MASK) == 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Place exponent into the index-th empty tile (counting row by row)
+    public static long spawn(long board, int index, int exponent) {
+        for (int i = 0; i < CELLS; i++) {
+            if (((board >>> (i * 4)) & NIBBLE_MASK) == 0) {
+                if (index == 0) {
+                    return board | ((long) exponent << (i * 4));
+                }
+                index--;
+            }
+        }
+        return board;
+    }
+
+    // A 2 (with probability twoProbability, otherwise a 4) in a random empty tile
+    public static long spawnRandom(long board, RandomGenerator random, double twoProbability) {
+        int empty = emptyCount(board);
+        if (empty == 0) {
+            return board;
+        }
+        int exponent = random.nextDouble() < twoProbability ? 1 : 2;
+        return spawn(board, random.nextInt(empty), exponent);
+    }
+
+    public static int maxExponent(long board) {
+        int max = 0;
+        for (int i = 0; i < CELLS; i++) {
+            max = Math.max(max, (int) ((board >>> (i * 4)) & NIBBLE_MASK));
+        }
+        return max;
+    }
+
+}
@@ -0,0 +1,87 @@
+/**
+ * Copy of a game at one point: the tiles, the scores and the state, plus where
+ * the tiles went if it was taken right after a move. GameLogic publishes a new
+ * one after every change (see GameLogic.getSnapshot). Never changes once made,
+ * so any thread can read it without locking.
+ *
+ * 4 x 4 boards are kept packed in one long like Bitboard, other sizes as a
+ * byte[] of exponents like FlatBoard.
+ */
+public final class BoardSnapshot {
+
+    private final int size;
+    private final long board; // packed board, 0 for other sizes
+    private final byte[] exponents; // exponents of other sizes, null for packed boards
+    private final int score;
+    private final int bestScore;
+    private final GameState state;
+    private final Displacements moves; // null unless taken right after a move
+
+    public BoardSnapshot(GameLogic logic, Displacements moves) {
+        size = logic.getSize();
+        if (logic.getRules().isPacked()) {
+            board = logic.getPackedBoard();
+            exponents = null;
+        } else {
+            board = 0;
+            exponents = logic.getExponents();
+        }
+        score = logic.getScore();
+        bestScore = logic.getBestScore();
+        state = logic.getGameState();
+        this.moves = moves == null ? null : moves.copy();
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isPacked() {
+        return exponents == null;
+    }
+
+    // Packed board, see Bitboard for the layout. Only for 4 x 4 boards
+    public long getPackedBoard() {
+        if (exponents != null) {
+            throw new IllegalStateException("Only 4 x 4 boards are packed: " + size + " x " + size);
+        }
+        return board;
+    }
+
+    // Exponent of the tile at row * size + col
+    public int getExponent(int index) {
+        return exponents == null ? Bitboard.getExponent(board, index / size, index % size) : exponents[index];
+    }
+
+    public int getTile(int row, int col) {
+        return Bitboard.toValue(getExponent(row * size + col));
+    }
+
+    // Exponents of the whole board, one byte per tile row by row
+    public void copyExponents(byte[] to) {
+        if (exponents == null) {
+            Bitboard.toExponents(board, to, 0);
+        } else {
+            System.arraycopy(exponents, 0, to, 0, exponents.length);
+        }
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    public GameState getGameState() {
+        return state;
+    }
+
+    // Where the tiles of the last move went, null if the snapshot isn't of a move.
+    // Don't change it
+    public Displacements getMoves() {
+        return moves;
+    }
+
+}
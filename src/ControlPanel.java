@@ -16,13 +16,14 @@ public class ControlPanel extends JPanel {
     private static final Color TITLE_COLOR = new Color(119, 110, 101);
     private static JLabel scoreLabel;
     private static JLabel bestScoreLabel;
+    private static JLabel hintLabel;
 
     public ControlPanel(GameBoard board) {
         setBackground(Game.BG_COLOR);
         setPreferredSize(new Dimension(600, 150));
         setLayout(null);
 
-        final JPanel sidePanel = new JPanel(new GridLayout(2, 0, 0, 0));
+        final JPanel sidePanel = new JPanel(new GridLayout(5, 0, 0, 0));
         Font font = new Font("Arial", Font.BOLD, 20);
 
         // Display score
@@ -39,6 +40,13 @@ public class ControlPanel extends JPanel {
         bestScoreLabel.setBounds(50, 120, 250, 30);
         add(bestScoreLabel);
 
+        // Display hint, empty until user asks for one
+        hintLabel = new JLabel("");
+        hintLabel.setForeground(TITLE_COLOR);
+        hintLabel.setFont(font);
+        hintLabel.setBounds(300, 120, 250, 30);
+        add(hintLabel);
+
         // New game button
         final JButton reset = new JButton("New Game");
         reset.addActionListener(new ActionListener() {
@@ -59,9 +67,39 @@ public class ControlPanel extends JPanel {
 
         sidePanel.add(undo);
 
+        // Redo move button, only does something right after an undo
+        final JButton redo = new JButton("Redo Move");
+        redo.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                board.redo();
+            }
+        });
+
+        sidePanel.add(redo);
+
+        // Hint button, asks the solver for the best move
+        final JButton hint = new JButton("Hint");
+        hint.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                board.hint();
+            }
+        });
+
+        sidePanel.add(hint);
+
+        // Replay button, plays the game so far again (+ and - set the speed)
+        final JButton replay = new JButton("Replay");
+        replay.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                board.replay();
+            }
+        });
+
+        sidePanel.add(replay);
+
         sidePanel.setBackground(Game.BG_COLOR);
 
-        sidePanel.setBounds(450, 20, 100, 60);
+        sidePanel.setBounds(450, 0, 100, 150);
         add(sidePanel);
     }
 
@@ -84,4 +122,8 @@ public class ControlPanel extends JPanel {
         bestScoreLabel.setText("Best: " + String.valueOf(bestScore));
     }
 
+    public static void setHint(String hint) {
+        hintLabel.setText(hint);
+    }
+
 }
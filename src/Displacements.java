@@ -0,0 +1,158 @@
+/**
+ * Where every tile of a board went in one move, for animating it.
+ *
+ * One record per tile that was on the board before the move: the cell it
+ * started in, the cell it ended up in, its exponent, and whether it merged
+ * with another tile there. Cells are indexed row * size + col like FlatBoard.
+ * The tile spawned after the move is recorded separately. Records live in
+ * arrays reused for every move.
+ */
+public final class Displacements {
+
+    private final int[] from = new int[GameRules.MAX_SIZE * GameRules.MAX_SIZE];
+    private final int[] to = new int[from.length];
+    private final byte[] exponents = new byte[from.length];
+    private final boolean[] merged = new boolean[from.length];
+    private int count;
+    private boolean moved; // any tile changed cell or merged
+
+    private int spawnIndex = -1;
+    private int spawnExponent;
+
+    /*
+     * Record the move of cells (the board before the move) in the given
+     * direction, 1 - up, 2 - right, 3 - down, 4 - left. Walks the lines the same
+     * way as FlatBoard.move, without changing cells.
+     */
+    public void record(byte[] cells, int size, int direction) {
+        count = 0;
+        moved = false;
+        spawnIndex = -1;
+
+        int lineStart;
+        int lineStep;
+        int step;
+        switch (direction) {
+            case 1:
+                lineStart = 0;
+                lineStep = 1;
+                step = size;
+                break;
+            case 2:
+                lineStart = size - 1;
+                lineStep = size;
+                step = -1;
+                break;
+            case 3:
+                lineStart = (size - 1) * size;
+                lineStep = 1;
+                step = -size;
+                break;
+            case 4:
+                lineStart = 0;
+                lineStep = size;
+                step = 1;
+                break;
+            default:
+                return;
+        }
+
+        for (int line = 0; line < size; line++) {
+            int start = lineStart + line * lineStep;
+            int target = start;
+            int pending = 0;
+            int pendingIndex = 0;
+
+            for (int i = 0; i < size; i++) {
+                int index = start + i * step;
+                int exponent = cells[index];
+                if (exponent == 0) {
+                    continue;
+                }
+
+                if (pending == exponent && exponent < FlatBoard.MAX_EXPONENT) {
+                    // Both tiles slide to target and merge there
+                    add(pendingIndex, target, pending, true);
+                    add(index, target, exponent, true);
+                    target += step;
+                    pending = 0;
+                } else {
+                    if (pending != 0) {
+                        add(pendingIndex, target, pending, false);
+                        target += step;
+                    }
+                    pending = exponent;
+                    pendingIndex = index;
+                }
+            }
+
+            if (pending != 0) {
+                add(pendingIndex, target, pending, false);
+            }
+        }
+    }
+
+    private void add(int fromIndex, int toIndex, int exponent, boolean merge) {
+        from[count] = fromIndex;
+        to[count] = toIndex;
+        exponents[count] = (byte) exponent;
+        merged[count] = merge;
+        count++;
+        moved |= merge || fromIndex != toIndex;
+    }
+
+    // Copy of these records that later moves don't change
+    public Displacements copy() {
+        Displacements copy = new Displacements();
+        System.arraycopy(from, 0, copy.from, 0, count);
+        System.arraycopy(to, 0, copy.to, 0, count);
+        System.arraycopy(exponents, 0, copy.exponents, 0, count);
+        System.arraycopy(merged, 0, copy.merged, 0, count);
+        copy.count = count;
+        copy.moved = moved;
+        copy.spawnIndex = spawnIndex;
+        copy.spawnExponent = spawnExponent;
+        return copy;
+    }
+
+    // The tile added after the move
+    public void spawned(int index, int exponent) {
+        spawnIndex = index;
+        spawnExponent = exponent;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int from(int i) {
+        return from[i];
+    }
+
+    public int to(int i) {
+        return to[i];
+    }
+
+    public int exponent(int i) {
+        return exponents[i];
+    }
+
+    public boolean merged(int i) {
+        return merged[i];
+    }
+
+    // False if the move changed nothing
+    public boolean moved() {
+        return moved;
+    }
+
+    // Cell of the spawned tile, -1 if none
+    public int spawnIndex() {
+        return spawnIndex;
+    }
+
+    public int spawnExponent() {
+        return spawnExponent;
+    }
+
+}
@@ -0,0 +1,13 @@
+public enum Durability {
+    NONE, // nothing is saved, for simulations and tests
+    ASYNC, // saved by a background thread every flush interval and on exit
+    FSYNC; // every move is written and forced to disk before makeMove returns
+
+    /**
+     * Mode set with -Dgame.durability=none|async|fsync, ASYNC if not set.
+     */
+    public static Durability fromSystemProperty() {
+        String mode = System.getProperty("game.durability");
+        return mode == null ? ASYNC : valueOf(mode.toUpperCase());
+    }
+}
@@ -0,0 +1,298 @@
+import java.util.random.RandomGenerator;
+
+/**
+ * Helpers for boards of any size, stored as a flat byte[] of exponents.
+ *
+ * Tile (row, col) of a size x size board is cells[row * size + col] and holds
+ * the tile's exponent, like Bitboard (0 = empty, 1 = 2, 2 = 4, ...). The
+ * standard 4 x 4 board is packed into a long by Bitboard instead, which is
+ * faster; these methods are for every other size.
+ *
+ * Moves work in place on the array and never allocate.
+ */
+public final class FlatBoard {
+
+    // Largest exponent a tile can reach, higher would overflow the int score
+    public static final int MAX_EXPONENT = 30;
+
+    // Bits of the value returned by move, see there
+    public static final long CHANGED = 1L << 32;
+    public static final long WON = 1L << 33;
+
+    private FlatBoard() {
+    }
+
+    // TILE ACCESS ==============================================================
+
+    public static int getTile(byte[] cells, int size, int row, int col) {
+        return Bitboard.toValue(cells[row * size + col]);
+    }
+
+    // 0 -> 0, 2 -> 1, 4 -> 2, ...
+    public static int toExponent(int value) {
+        if (value == 0) {
+            return 0;
+        }
+        if (value < 2 || Integer.bitCount(value) != 1 || value > (1 << MAX_EXPONENT)) {
+            throw new IllegalArgumentException("Not a valid tile value: " + value);
+        }
+        return Integer.numberOfTrailingZeros(value);
+    }
+
+    // CONVERSION ===============================================================
+
+    public static void fromArray(int[][] values, byte[] cells) {
+        int size = values.length;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                cells[row * size + col] = (byte) toExponent(values[row][col]);
+            }
+        }
+    }
+
+    public static int[][] toArray(byte[] cells, int size) {
+        int[][] values = new int[size][size];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                values[row][col] = getTile(cells, size, row, col);
+            }
+        }
+        return values;
+    }
+
+    // BOARD MANIPULATION =======================================================
+
+    // transpose - rows -> cols, cols -> rows
+    public static void transpose(byte[] cells, int size) {
+        for (int row = 0; row < size; row++) {
+            for (int col = row + 1; col < size; col++) {
+                byte swap = cells[row * size + col];
+                cells[row * size + col] = cells[col * size + row];
+                cells[col * size + row] = swap;
+            }
+        }
+    }
+
+    // reversing values in each col (first row <-> last row, ...)
+    public static void reverse(byte[] cells, int size) {
+        for (int row = 0; row < size / 2; row++) {
+            int other = size - 1 - row;
+            for (int col = 0; col < size; col++) {
+                byte swap = cells[row * size + col];
+                cells[row * size + col] = cells[other * size + col];
+                cells[other * size + col] = swap;
+            }
+        }
+    }
+
+    // MOVE LOGIC ===============================================================
+
+    /*
+     * Move every tile in the given direction. 1 - up, 2 - right, 3 - down, 4 - left,
+     * anything else throws IllegalArgumentException
+     *
+     * Each line is slid towards its first cell, found with start and step, and
+     * equal neighbours are merged. Tiles at MAX_EXPONENT are never merged.
+     *
+     * Returns the score gained in the low 32 bits, plus CHANGED if any tile moved
+     * and WON if a merge made a tile of winExponent.
+     */
+    public static long move(byte[] cells, int size, int direction, int winExponent) {
+        return move(cells, size, direction, winExponent, null);
+    }
+
+    // Same as above, also updating hash with every tile that changes (if not null)
+    public static long move(byte[] cells, int size, int direction, int winExponent, Zobrist hash) {
+        int lineStart;
+        int lineStep;
+        int step;
+        switch (direction) {
+            case 1:
+                lineStart = 0;
+                lineStep = 1;
+                step = size;
+                break;
+            case 2:
+                lineStart = size - 1;
+                lineStep = size;
+                step = -1;
+                break;
+            case 3:
+                lineStart = (size - 1) * size;
+                lineStep = 1;
+                step = -size;
+                break;
+            case 4:
+                lineStart = 0;
+                lineStep = size;
+                step = 1;
+                break;
+            default:
+                throw new IllegalArgumentException("Direction must be 1 - 4: " + direction);
+        }
+
+        long result = 0;
+        int moveScore = 0;
+        for (int line = 0; line < size; line++) {
+            int start = lineStart + line * lineStep;
+            int target = start;
+            int pending = 0;
+
+            for (int i = 0; i < size; i++) {
+                int exponent = cells[start + i * step];
+                if (exponent == 0) {
+                    continue;
+                }
+
+                if (pending == exponent && exponent < MAX_EXPONENT) {
+                    // Merge 2 tiles (ex. 2 2 = 4)
+                    result |= place(cells, target, exponent + 1, hash);
+                    moveScore += 1 << (exponent + 1);
+                    if (exponent + 1 == winExponent) {
+                        result |= WON;
+                    }
+                    target += step;
+                    pending = 0;
+                } else {
+                    if (pending != 0) {
+                        result |= place(cells, target, pending, hash);
+                        target += step;
+                    }
+                    pending = exponent;
+                }
+            }
+
+            // Add rest of tile that is still pending, then clear the rest of the line
+            if (pending != 0) {
+                result |= place(cells, target, pending, hash);
+                target += step;
+            }
+            for (int i = (target - start) / step; i < size; i++) {
+                result |= place(cells, target, 0, hash);
+                target += step;
+            }
+        }
+
+        return result | (moveScore & 0xFFFFFFFFL);
+    }
+
+    // Write exponent to a cell, CHANGED if it wasn't there already
+    private static long place(byte[] cells, int index, int exponent, Zobrist hash) {
+        if (cells[index] == exponent) {
+            return 0;
+        }
+        if (hash != null) {
+            hash.update(index, cells[index], exponent);
+        }
+        cells[index] = (byte) exponent;
+        return CHANGED;
+    }
+
+    // LEGAL MOVES ==============================================================
+
+    /*
+     * True if any direction changes the board: there is an empty tile, or two
+     * neighbours are equal and below MAX_EXPONENT.
+     */
+    public static boolean hasLegalMove(byte[] cells, int size) {
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                int exponent = cells[row * size + col];
+                if (exponent == 0) {
+                    return true;
+                }
+                if (exponent < MAX_EXPONENT) {
+                    if (col + 1 < size && cells[row * size + col + 1] == exponent) {
+                        return true;
+                    }
+                    if (row + 1 < size && cells[(row + 1) * size + col] == exponent) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Bit d set if moving in direction d changes the board (1 - up ... 4 - left)
+    public static int legalMoves(byte[] cells, int size) {
+        int legal = 0;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                int exponent = cells[row * size + col];
+                if (col + 1 < size) {
+                    legal |= pairMoves(exponent, cells[row * size + col + 1], 4, 2);
+                }
+                if (row + 1 < size) {
+                    legal |= pairMoves(exponent, cells[(row + 1) * size + col], 1, 3);
+                }
+            }
+        }
+        return legal;
+    }
+
+    /*
+     * Directions in which two neighbours change the board. first is the tile on
+     * the side of direction toFirst.
+     */
+    private static int pairMoves(int first, int second, int toFirst, int toSecond) {
+        if (first != 0 && first == second && first < MAX_EXPONENT) {
+            return (1 << toFirst) | (1 << toSecond);
+        }
+        if (first == 0 && second != 0) {
+            return 1 << toFirst;
+        }
+        if (first != 0 && second == 0) {
+            return 1 << toSecond;
+        }
+        return 0;
+    }
+
+    // EMPTY TILES ==============================================================
+
+    public static int emptyCount(byte[] cells) {
+        int count = 0;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] == 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Place exponent into the index-th empty tile (counting row by row), returns its cell
+    public static int spawn(byte[] cells, int index, int exponent) {
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] == 0) {
+                if (index == 0) {
+                    cells[i] = (byte) exponent;
+                    return i;
+                }
+                index--;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * A 2 (with probability twoProbability, otherwise a 4) in a random empty
+     * tile. Returns the cell it went to, -1 on a full board.
+     */
+    public static int spawnRandom(byte[] cells, RandomGenerator random, double twoProbability) {
+        int empty = emptyCount(cells);
+        if (empty == 0) {
+            return -1;
+        }
+        int exponent = random.nextDouble() < twoProbability ? 1 : 2;
+        return spawn(cells, random.nextInt(empty), exponent);
+    }
+
+    public static int maxExponent(byte[] cells) {
+        int max = 0;
+        for (int i = 0; i < cells.length; i++) {
+            max = Math.max(max, cells[i]);
+        }
+        return max;
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Times between animation frames, to check an animation keeps its frame
+ * budget. A frame taking more than one and a half budgets counts as late,
+ * it means a frame was skipped on screen.
+ */
+public class FrameStats {
+
+    private final long budgetNanos;
+    private long frames;
+    private long lateFrames;
+    private long totalNanos;
+    private long maxNanos;
+
+    public FrameStats(long budgetMillis) {
+        budgetNanos = budgetMillis * 1_000_000L;
+    }
+
+    // Time since the previous frame
+    public void record(long nanos) {
+        frames++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        if (nanos > budgetNanos + budgetNanos / 2) {
+            lateFrames++;
+        }
+    }
+
+    public void reset() {
+        frames = 0;
+        lateFrames = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getLateFrames() {
+        return lateFrames;
+    }
+
+    public double getAverageMillis() {
+        return frames == 0 ? 0 : totalNanos / 1e6 / frames;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos / 1e6;
+    }
+
+    // Frames per second the average frame time works out to
+    public double getFps() {
+        return totalNanos == 0 ? 0 : frames * 1e9 / totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d frames, %.1f fps, avg %.1f ms, max %.1f ms, %d late", frames, getFps(),
+                getAverageMillis(), getMaxMillis(), lateFrames);
+    }
+
+}
@@ -23,6 +23,19 @@ public class Game implements Runnable {
 
         JPanel gameButtons = new JPanel(new GridLayout(0, 2));
 
+        // Board size and winning tile of a new game
+        String[] sizes = new String[GameRules.MAX_SIZE - GameRules.MIN_SIZE + 1];
+        for (int i = 0; i < sizes.length; i++) {
+            int size = GameRules.MIN_SIZE + i;
+            sizes[i] = size + " x " + size;
+        }
+        final JComboBox<String> sizeChoice = new JComboBox<String>(sizes);
+        sizeChoice.setSelectedIndex(GameRules.STANDARD.getSize() - GameRules.MIN_SIZE);
+
+        final JComboBox<Integer> winChoice = new JComboBox<Integer>(
+                new Integer[] { 256, 512, 1024, 2048, 4096, 8192, 16384, 32768 });
+        winChoice.setSelectedItem(GameRules.STANDARD.getWinTile());
+
         // Create new game
         final JButton newGame = new JButton("New Game");
         newGame.addActionListener(new ActionListener() {
@@ -33,7 +46,9 @@ public class Game implements Runnable {
                 frame.setSize(600, 750);
                 frame.setResizable(false);
 
-                GameBoard board = new GameBoard();
+                GameRules rules = new GameRules(GameRules.MIN_SIZE + sizeChoice.getSelectedIndex(),
+                        (Integer) winChoice.getSelectedItem());
+                GameBoard board = new GameBoard(rules);
                 frame.add(board, BorderLayout.CENTER);
 
                 final ControlPanel control_panel = new ControlPanel(board);
@@ -81,8 +96,10 @@ public class Game implements Runnable {
         });
 
         // Only enable load game button if file exist
-        loadGame.setEnabled(GameLogic.fileExist("game_state.txt"));
+        loadGame.setEnabled(GameLogic.hasSavedGame());
         gameButtons.add(loadGame);
+        gameButtons.add(sizeChoice);
+        gameButtons.add(winChoice);
         startFrame.add(gameButtons, BorderLayout.CENTER);
 
         startFrame.getContentPane().setBackground(BG_COLOR);
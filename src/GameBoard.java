@@ -1,12 +1,24 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.*;
 
 @SuppressWarnings("serial")
 public class GameBoard extends JPanel implements KeyListener {
 
-    private GameLogic logic; // model for the game
+    private GameLoop loop; // runs the game on screen on its own thread, playerLoop or a replay
+    private final GameLoop playerLoop; // runs the player's game
+    private final Runnable publisher; // tells the EDT the loop has a new snapshot
+    private BoardSnapshot showing; // game as last handed to the view by the loop
+    private final AtomicBoolean updatePending = new AtomicBoolean(); // update() queued on the EDT
+    private Solver solver; // suggests moves when user asks for a hint
+    private final ExecutorService hints; // runs the solver off the EDT, one search at a time
     
     // Game constants
     public static final int BOARD_WIDTH = 500;
@@ -16,19 +28,70 @@ public class GameBoard extends JPanel implements KeyListener {
     private static final Color TILE_COLOR = new Color(119, 110, 101);
     private static final Color TILE_COLOR_LARGE = new Color(249, 246, 242);
     private static final String FONT_NAME = "Arial";
-    private static final int SPACING = 14;
-    private static final int TILE_SIZE = 107;
+    private static final int SPACING = 14; // on a 4 x 4 board, scaled for other sizes
+    private static final int TILE_SIZE = 107; // on a 4 x 4 board, scaled for other sizes
     private static final int FONT_SIZE_LARGE = 55; // start at 2
     private static final int FONT_SIZE_MED = 45; // start at 128
-    private static final int FONT_SIZE_SMALL = 35; // start at 1028
+    private static final int FONT_SIZE_SMALL = 35; // start at 1024
+    private static final long HINT_TIME_BUDGET = 200; // ms the solver may think for a hint
+    private static final Color OVERLAY_COLOR = new Color(238, 228, 218, 186);
+    private static final Font OVERLAY_FONT = new Font(FONT_NAME, Font.BOLD, 60);
+    private static final int FRAME_MILLIS = 16; // frame budget, about 60 fps
+    private static final long SLIDE_NANOS = 100_000_000L; // tiles sliding to where they go
+    private static final long POP_NANOS = 100_000_000L; // merged and new tiles growing
+    private static final int REPLAY_SPEED = 8; // moves per second a replay starts at
+    private static final int MAX_REPLAY_SPEED = 2048; // about what the loop's queue takes per frame
+
+    // Tile background by exponent, 0 (empty) to 11 (2048). Bigger tiles use the empty color
+    private static final Color[] TILE_BACKGROUNDS = {
+            new Color(205, 193, 180), new Color(238, 228, 218), new Color(238, 225, 201),
+            new Color(243, 178, 122), new Color(246, 150, 100), new Color(247, 124, 95),
+            new Color(247, 95, 59), new Color(237, 208, 115), new Color(237, 204, 98),
+            new Color(237, 201, 80), new Color(237, 197, 63), new Color(237, 194, 46) };
+
+    private byte[] exponents = new byte[0]; // board read on every repaint, reused
+
+    // Rendering cache, drawn once per board size and blitted on every repaint
+    private int cacheSize; // board size the images below are for, 0 if none yet
+    private int spacing; // gap between tiles
+    private int tileSize;
+    private BufferedImage background; // board with every tile empty
+    private final BufferedImage[] sprites = new BufferedImage[FlatBoard.MAX_EXPONENT + 1]; // per exponent
+    private BufferedImage winOverlay;
+    private BufferedImage lossOverlay;
+
+    // What is on screen, so a refresh only repaints the tiles that changed
+    private byte[] shown = new byte[0];
+    private GameState shownState;
+
+    // Animation of the last move, from where the model says its tiles went
+    private final Timer animation;
+    private long animationStart; // System.nanoTime() the animation started, 0 if none
+    private Displacements animating; // the move being animated, null if none
+    private long lastFrame; // System.nanoTime() of the last frame painted, 0 if none
+    private final FrameStats frameStats = new FrameStats(FRAME_MILLIS);
+
+    // Replay of the player's game, fed to its own loop by replayTimer
+    private GameReplay replay; // null unless replaying
+    private final Timer replayTimer;
+    private int replaySpeed = REPLAY_SPEED; // moves per second
+    private double replayOwed; // moves due but not yet fed to the loop
+    private long replayLastTick; // System.nanoTime() of the last tick
 
     private JButton tryAgain;
     private JButton newGame;
 
     /**
-     * Initializes the game board.
+     * Initializes a standard 4 x 4 game board.
      */
     public GameBoard() {
+        this(GameRules.STANDARD);
+    }
+
+    /**
+     * Initializes the game board for the given board size and winning tile.
+     */
+    public GameBoard(GameRules rules) {
 
         // Enable keyboard focus on the court area.
         // When this component has the keyboard focus, key events are handled by its key
@@ -38,13 +101,49 @@ public class GameBoard extends JPanel implements KeyListener {
         setSize(500, 500);
         setLayout(null);
 
-        // initializes model for the game
-        logic = new GameLogic();
+        // initializes model for the game. The loop's thread publishes every change,
+        // shown on the EDT once per burst of changes
+        publisher = new Runnable() {
+            public void run() {
+                if (updatePending.compareAndSet(false, true)) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            update();
+                        }
+                    });
+                }
+            }
+        };
+        playerLoop = new GameLoop(new GameLogic(rules), publisher);
+        loop = playerLoop;
+        showing = loop.getSnapshot();
+        solver = new Solver(Solver.DEFAULT_TABLE_BITS, HINT_TIME_BUDGET);
+        hints = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "game-hint");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
 
         setBackground(BG_COLOR);
 
         addKeyListener(this);
 
+        // Draws a frame of the running animation every frame budget
+        animation = new Timer(FRAME_MILLIS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                nextFrame();
+            }
+        });
+
+        // Feeds a replay's moves to its loop at the replay speed
+        replayTimer = new Timer(FRAME_MILLIS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                nextReplayMoves();
+            }
+        });
+
         // Try Again Button - Only show when game is over
         tryAgain = new JButton("Try Again");
         tryAgain.addActionListener(new ActionListener() {
@@ -77,13 +176,9 @@ public class GameBoard extends JPanel implements KeyListener {
 
     public void newGame() {
 
-        logic.newGame();
-
-        // Update score label
-        ControlPanel.setScore(logic.getScore());
-        ControlPanel.setBestScore(logic.getBestScore());
-
-        repaint();
+        stopReplay();
+        loop.submit(GameLoop.NEW_GAME);
+        ControlPanel.setHint("");
 
         // Make sure try again and new game button is not visible
         // Prevent button staying if user clicked "New Game" instead of one of these
@@ -101,12 +196,8 @@ public class GameBoard extends JPanel implements KeyListener {
 
     public void loadGame() {
 
-        logic.loadGame();
-
-        // Update score label
-        ControlPanel.setScore(logic.getScore());
-        ControlPanel.setBestScore(logic.getBestScore());
-        repaint();
+        stopReplay();
+        loop.submit(GameLoop.LOAD_GAME);
 
         // Makes sure this component has keyboard/mouse focus
         requestFocusInWindow();
@@ -115,11 +206,21 @@ public class GameBoard extends JPanel implements KeyListener {
     // Undo move if possible
     public void undo() {
 
-        // If move is undo-ed, repaint and update score
-        if (logic.undoMove()) {
-            repaint();
-            ControlPanel.setScore(logic.getScore());
-            repaint();
+        // Replays can't be changed
+        if (loop == playerLoop) {
+            loop.submit(GameLoop.UNDO);
+        }
+
+        // Makes sure this component has keyboard/mouse focus
+        requestFocusInWindow();
+
+    }
+
+    // Redo an undone move if possible
+    public void redo() {
+
+        if (loop == playerLoop) {
+            loop.submit(GameLoop.REDO);
         }
 
         // Makes sure this component has keyboard/mouse focus
@@ -127,108 +228,458 @@ public class GameBoard extends JPanel implements KeyListener {
 
     }
 
+    // Show the solver's best move in the control panel once it has thought it over
+    public void hint() {
+
+        // The solver only knows the packed 4 x 4 board
+        final BoardSnapshot game = loop.getSnapshot();
+        if (game.getGameState() == GameState.STARTED && game.isPacked()) {
+            // Searching takes up to the time budget, keep the EDT painting meanwhile
+            hints.execute(new Runnable() {
+                public void run() {
+                    final int move = solver.bestMove(game.getPackedBoard());
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            showHint(game, move);
+                        }
+                    });
+                }
+            });
+        }
+
+        // Makes sure this component has keyboard/mouse focus
+        requestFocusInWindow();
+    }
+
+    // On the EDT: show a hint unless the game moved on while the solver thought
+    private void showHint(BoardSnapshot game, int move) {
+        if (loop.getSnapshot() != game) {
+            return;
+        }
+        switch (move) {
+            case 1:
+                ControlPanel.setHint("Hint: Up");
+                break;
+            case 2:
+                ControlPanel.setHint("Hint: Right");
+                break;
+            case 3:
+                ControlPanel.setHint("Hint: Down");
+                break;
+            case 4:
+                ControlPanel.setHint("Hint: Left");
+                break;
+            default:
+                ControlPanel.setHint("");
+                break;
+        }
+    }
+
+    // Play the player's game so far again from its start, see update
+    public void replay() {
+
+        if (loop == playerLoop) {
+            loop.submit(GameLoop.RECORDING);
+        } else {
+            stopReplay();
+        }
+
+        // Makes sure this component has keyboard/mouse focus
+        requestFocusInWindow();
+    }
+
     @Override
     public void keyPressed(KeyEvent e) {
 
-        // Only trigger if game is being played, prevent user from moving tiles when
-        // game ended
-        if (logic.getGameState() == GameState.STARTED) {
-
+        // During a replay + and - change its speed, escape goes back to the game
+        if (loop != playerLoop) {
             switch (e.getKeyCode()) {
-                case KeyEvent.VK_UP:
-                    logic.makeMove(1);
-                    break;
-                case KeyEvent.VK_RIGHT:
-                    logic.makeMove(2);
+                case KeyEvent.VK_EQUALS:
+                case KeyEvent.VK_PLUS:
+                case KeyEvent.VK_ADD:
+                    setReplaySpeed(replaySpeed * 2);
                     break;
-                case KeyEvent.VK_DOWN:
-                    logic.makeMove(3);
+                case KeyEvent.VK_MINUS:
+                case KeyEvent.VK_SUBTRACT:
+                    setReplaySpeed(replaySpeed / 2);
                     break;
-                case KeyEvent.VK_LEFT:
-                    logic.makeMove(4);
+                case KeyEvent.VK_ESCAPE:
+                    stopReplay();
                     break;
                 default:
                     break;
             }
+            return;
+        }
 
-            // Update score label
-            ControlPanel.setScore(logic.getScore());
-            repaint();
+        // The loop ignores moves once the game ended, and applies them in order
+        // however fast they come. Nothing waits for the board to be drawn
+        switch (e.getKeyCode()) {
+            case KeyEvent.VK_UP:
+                loop.submit(1);
+                break;
+            case KeyEvent.VK_RIGHT:
+                loop.submit(2);
+                break;
+            case KeyEvent.VK_DOWN:
+                loop.submit(3);
+                break;
+            case KeyEvent.VK_LEFT:
+                loop.submit(4);
+                break;
+            default:
+                break;
+        }
 
+    }
+
+    // On the EDT: show the loop's latest snapshot, animating it if it is a move
+    private void update() {
+        updatePending.set(false);
+
+        // The player asked for a replay and the loop copied the recording
+        GameRecording recording = playerLoop.takeRecording();
+        if (recording != null) {
+            startReplay(recording);
         }
 
+        BoardSnapshot next = loop.getSnapshot();
+        if (next == showing) {
+            return;
+        }
+        showing = next;
+
+        // Update score label, old hint no longer applies
+        ControlPanel.setScore(showing.getScore());
+        ControlPanel.setBestScore(showing.getBestScore());
+        ControlPanel.setHint(replay == null ? "" : "Replay: " + replaySpeed + " moves/s");
+
+        // A new move cuts the running animation short
+        if (showing.getMoves() != null) {
+            animating = showing.getMoves();
+            animationStart = System.nanoTime();
+            animation.start();
+            repaint(50, 0, 500, 500);
+        } else {
+            stopAnimation();
+        }
     }
 
-    // Draws the game board and end screen if appropriate.
-    public void paintComponent(Graphics g) {
-        Graphics2D g2 = (Graphics2D) g;
+    // REPLAY ===================================================================
 
-        g2.setColor(BOARD_BG_COLOR);
-        g2.fillRoundRect(50, 0, 500, 500, 6, 6);
+    // Show the recorded game from its start on a loop of its own
+    private void startReplay(GameRecording recording) {
+        stopReplay();
+        replay = new GameReplay(recording);
+        loop = new GameLoop(replay.getLogic(), publisher);
+        replayOwed = 0;
+        replayLastTick = System.nanoTime();
+        replayTimer.start();
+    }
+
+    // Back to the player's game, which went on unchanged
+    private void stopReplay() {
+        if (replay == null) {
+            return;
+        }
+        replayTimer.stop();
+        loop.close();
+        loop = playerLoop;
+        replay = null;
+        update();
+    }
+
+    // Moves per second, from 1 to MAX_REPLAY_SPEED
+    public void setReplaySpeed(int movesPerSecond) {
+        replaySpeed = Math.max(1, Math.min(MAX_REPLAY_SPEED, movesPerSecond));
+        if (replay != null) {
+            ControlPanel.setHint("Replay: " + replaySpeed + " moves/s");
+        }
+    }
+
+    // Timer tick: hand the loop the moves that came due since the last tick
+    private void nextReplayMoves() {
+        long now = System.nanoTime();
+        replayOwed += (now - replayLastTick) * replaySpeed / 1e9;
+        replayLastTick = now;
+
+        // A move the loop's queue has no room for waits for the next tick, a
+        // replay never skips one
+        while (replayOwed >= 1 && replay.hasNext() && loop.submit(replay.peekEvent())) {
+            replay.nextEvent();
+            replayOwed--;
+        }
+        replayOwed = Math.min(replayOwed, GameLoop.QUEUE_CAPACITY);
 
-        // Get board
-        int[][] board = logic.getBoard();
+        // Stay on the end of the replay until the player goes back
+        if (!replay.hasNext()) {
+            replayTimer.stop();
+        }
+    }
 
-        // Draws Tiles
-        for (int row = 0; row < board.length; row++) {
-            for (int col = 0; col < board[0].length; col++) {
-                // Get value of tile
-                int value = board[row][col];
+    // Timer tick: draw the next frame, or the board once the animation is over
+    private void nextFrame() {
+        if (System.nanoTime() - animationStart >= SLIDE_NANOS + POP_NANOS) {
+            stopAnimation();
+        } else {
+            repaint(50, 0, 500, 500);
+        }
+    }
 
-                // Get x and y position of starting point
-                int xPosition = 50 + (col * 107) + ((col + 1) * SPACING);
-                int yPosition = 0 + (row * 107) + ((row + 1) * SPACING);
+    private void stopAnimation() {
+        // The screen shows the last frame of the move, not the board, where its
+        // tiles went
+        Displacements touched = null;
+        if (animation.isRunning()) {
+            animation.stop();
+            animationStart = 0;
+            lastFrame = 0;
+            touched = animating;
+        }
+        animating = null;
+        refresh(touched);
+    }
 
-                // Set color of tile based on value
-                g2.setColor(getTileBackground(value));
+    // Times between animation frames since the game started
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
 
-                // Draw background
-                g2.fillRoundRect(xPosition, yPosition, TILE_SIZE, TILE_SIZE, 4, 4);
+    // Repaint after the snapshot changed, only the tiles that differ from the
+    // screen or that an animated move touched (null if none)
+    private void refresh(Displacements touched) {
+        int size = showing.getSize();
 
-                // If not an empty tile, add text to represent value
-                if (value != 0) {
+        // New board size or end screen shown or hidden, everything changes
+        if (shown.length != size * size || showing.getGameState() != shownState) {
+            shown = new byte[size * size];
+            showing.copyExponents(shown);
+            shownState = showing.getGameState();
+            repaint();
+            return;
+        }
 
-                    String stringValue = String.valueOf(value);
-                    Font font = getTileFont(value);
+        updateCache(size);
+        if (exponents.length != size * size) {
+            exponents = new byte[size * size];
+        }
+        showing.copyExponents(exponents);
+
+        // Swing merges these into one clip for the next paint
+        long dirty = dirtyTiles(shown, exponents, touched);
+        System.arraycopy(exponents, 0, shown, 0, shown.length);
+        while (dirty != 0) {
+            int i = Long.numberOfTrailingZeros(dirty);
+            dirty &= dirty - 1;
+            repaint(tileX(i % size), tileY(i / size), tileSize, tileSize);
+        }
+    }
 
-                    // If 2 or 4, brown text color, otherwise white text color
-                    if (value <= 4) {
-                        g.setColor(TILE_COLOR);
-                    } else {
-                        g.setColor(TILE_COLOR_LARGE);
-                    }
+    /*
+     * Bit i set if tile i needs repainting: it differs between shown and
+     * exponents, or the move (null if none) slid, merged or spawned a tile
+     * there. Boards have at most 8 x 8 tiles.
+     */
+    static long dirtyTiles(byte[] shown, byte[] exponents, Displacements moves) {
+        long dirty = 0;
+        for (int i = 0; i < exponents.length; i++) {
+            if (exponents[i] != shown[i]) {
+                dirty |= 1L << i;
+            }
+        }
+        if (moves != null) {
+            for (int i = 0; i < moves.count(); i++) {
+                // A tile that didn't move or merge was drawn right in every frame
+                if (moves.from(i) != moves.to(i) || moves.merged(i)) {
+                    dirty |= (1L << moves.from(i)) | (1L << moves.to(i));
+                }
+            }
+            if (moves.spawnIndex() >= 0) {
+                dirty |= 1L << moves.spawnIndex();
+            }
+        }
+        return dirty;
+    }
 
-                    // Draw text in the center of rect
-                    drawTextCentered(font, g, stringValue, xPosition, yPosition, TILE_SIZE, 0);
+    // Draws the game board and end screen if appropriate.
+    public void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g;
 
+        // Get board as exponents, without allocating on every repaint. The
+        // snapshot can't change while it is drawn
+        BoardSnapshot game = showing;
+        int size = game.getSize();
+        if (exponents.length != size * size) {
+            exponents = new byte[size * size];
+        }
+        game.copyExponents(exponents);
+        updateCache(size);
+
+        // Empty board, then the tiles on top
+        g2.drawImage(background, 50, 0, null);
+        long elapsed = animationStart == 0 ? -1 : System.nanoTime() - animationStart;
+        if (elapsed >= 0) {
+            if (lastFrame != 0) {
+                frameStats.record(System.nanoTime() - lastFrame);
+            }
+            lastFrame = System.nanoTime();
+        }
+
+        if (elapsed >= 0 && elapsed < SLIDE_NANOS) {
+            paintSlide(g2, size, game.getMoves(), (double) elapsed / SLIDE_NANOS);
+        } else {
+            // Tiles outside the clip (the ones that didn't change) are still on
+            // screen and skipped
+            Rectangle clip = g.getClipBounds();
+            int spawn = elapsed >= 0 ? game.getMoves().spawnIndex() : -1;
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    int exponent = exponents[row * size + col];
+                    int xPosition = tileX(col);
+                    int yPosition = tileY(row);
+                    if (exponent != 0 && row * size + col != spawn
+                            && (clip == null || clip.intersects(xPosition, yPosition, tileSize, tileSize))) {
+                        g2.drawImage(getSprite(exponent), xPosition, yPosition, null);
+                    }
                 }
             }
+            if (elapsed >= 0) {
+                paintPop(g2, size, game.getMoves(), Math.min(1.0, (double) (elapsed - SLIDE_NANOS) / POP_NANOS));
+            }
         }
 
-        // If no possible moves, display losing screen
-        if (logic.getGameState() == GameState.LOSS) {
-            g2.setColor(new Color(238, 228, 218, 186));
-            g2.fillRoundRect(50, 0, 500, 500, 6, 6);
+        // End screens wait until the move is done animating
+        if (elapsed >= 0) {
+            return;
+        }
 
-            g.setColor(TILE_COLOR);
-            Font font = new Font(FONT_NAME, Font.BOLD, 60);
-            drawTextCentered(font, g, "Game Over", 50, 0, 500, 30);
+        // If no possible moves, display losing screen
+        if (game.getGameState() == GameState.LOSS) {
+            if (lossOverlay == null) {
+                lossOverlay = drawOverlay("Game Over");
+            }
+            g2.drawImage(lossOverlay, 50, 0, null);
 
             tryAgain.setVisible(true);
 
-            // If a tile is 2048, display winning screen
-        } else if (logic.getGameState() == GameState.WIN) {
-            g2.setColor(new Color(238, 228, 218, 186));
-            g2.fillRoundRect(50, 0, 500, 500, 6, 6);
-
-            g.setColor(TILE_COLOR);
-            Font font = new Font(FONT_NAME, Font.BOLD, 60);
-            drawTextCentered(font, g, "You Won", 50, 0, 500, 30);
+            // If a tile is the winning tile, display winning screen
+        } else if (game.getGameState() == GameState.WIN) {
+            if (winOverlay == null) {
+                winOverlay = drawOverlay("You Won");
+            }
+            g2.drawImage(winOverlay, 50, 0, null);
 
             newGame.setVisible(true);
         }
     }
 
+    // Tiles on their way from where they were to where the move puts them
+    private void paintSlide(Graphics2D g2, int size, Displacements displacements, double progress) {
+        // Ease out, fast at first and slowing down at the end
+        double t = 1 - (1 - progress) * (1 - progress);
+        for (int i = 0; i < displacements.count(); i++) {
+            int from = displacements.from(i);
+            int to = displacements.to(i);
+            int x = (int) Math.round(tileX(from % size) + (tileX(to % size) - tileX(from % size)) * t);
+            int y = (int) Math.round(tileY(from / size) + (tileY(to / size) - tileY(from / size)) * t);
+            g2.drawImage(getSprite(displacements.exponent(i)), x, y, null);
+        }
+    }
+
+    // Merged tiles swell and shrink back, the new tile grows from nothing
+    private void paintPop(Graphics2D g2, int size, Displacements displacements, double progress) {
+        for (int i = 0; i < displacements.count(); i++) {
+            if (displacements.merged(i)) {
+                int to = displacements.to(i);
+                paintScaled(g2, exponents[to], to, size, 1 + 0.2 * Math.sin(Math.PI * progress));
+            }
+        }
+        int spawn = displacements.spawnIndex();
+        if (spawn >= 0 && exponents[spawn] != 0) {
+            paintScaled(g2, exponents[spawn], spawn, size, progress);
+        }
+    }
+
+    private void paintScaled(Graphics2D g2, int exponent, int index, int size, double scale) {
+        int scaledSize = (int) Math.round(tileSize * scale);
+        int offset = (tileSize - scaledSize) / 2;
+        g2.drawImage(getSprite(exponent), tileX(index % size) + offset, tileY(index / size) + offset,
+                scaledSize, scaledSize, null);
+    }
+
+    // RENDERING CACHE ==========================================================
+
+    // Tiles and gaps shrink on bigger boards so the board stays 500 wide
+    private void updateCache(int size) {
+        if (size == cacheSize) {
+            return;
+        }
+        cacheSize = size;
+        spacing = SPACING * Bitboard.SIZE / size;
+        tileSize = (500 - (size + 1) * spacing) / size;
+        Arrays.fill(sprites, null);
+
+        background = newImage(500, 500);
+        Graphics2D g2 = background.createGraphics();
+        g2.setColor(BOARD_BG_COLOR);
+        g2.fillRoundRect(0, 0, 500, 500, 6, 6);
+        g2.setColor(TILE_BACKGROUNDS[0]);
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                g2.fillRoundRect(tileX(col) - 50, tileY(row), tileSize, tileSize, 4, 4);
+            }
+        }
+        g2.dispose();
+    }
+
+    // Tile of the given exponent, drawn the first time it is needed
+    private BufferedImage getSprite(int exponent) {
+        BufferedImage sprite = sprites[exponent];
+        if (sprite == null) {
+            int value = Bitboard.toValue(exponent);
+            sprite = newImage(tileSize, tileSize);
+            Graphics2D g2 = sprite.createGraphics();
+            g2.setColor(getTileBackground(value));
+            g2.fillRoundRect(0, 0, tileSize, tileSize, 4, 4);
+
+            // If 2 or 4, brown text color, otherwise white text color
+            g2.setColor(value <= 4 ? TILE_COLOR : TILE_COLOR_LARGE);
+            drawTextCentered(getTileFont(value, tileSize), g2, String.valueOf(value), 0, 0, tileSize, 0);
+            g2.dispose();
+            sprites[exponent] = sprite;
+        }
+        return sprite;
+    }
+
+    // Translucent end screen over the whole board
+    private BufferedImage drawOverlay(String text) {
+        BufferedImage overlay = newImage(500, 500);
+        Graphics2D g2 = overlay.createGraphics();
+        g2.setColor(OVERLAY_COLOR);
+        g2.fillRoundRect(0, 0, 500, 500, 6, 6);
+        g2.setColor(TILE_COLOR);
+        drawTextCentered(OVERLAY_FONT, g2, text, 0, 0, 500, 30);
+        g2.dispose();
+        return overlay;
+    }
+
+    // Image in the screen's pixel format when on screen, so blitting it is a plain copy
+    private BufferedImage newImage(int width, int height) {
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        if (config != null) {
+            return config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private int tileX(int col) {
+        return 50 + (col * tileSize) + ((col + 1) * spacing);
+    }
+
+    private int tileY(int row) {
+        return (row * tileSize) + ((row + 1) * spacing);
+    }
+
     // Draw text in center of rectangle
     public void drawTextCentered(Font font, Graphics g, String text, 
             int startX, int startY, int size, int yOffset) {
@@ -247,47 +698,24 @@ public class GameBoard extends JPanel implements KeyListener {
 
     // Get background color of tile based on value
     public Color getTileBackground(int value) {
-        switch (value) {
-            case 0:
-                return new Color(205, 193, 180);
-            case 2:
-                return new Color(238, 228, 218);
-            case 4:
-                return new Color(238, 225, 201);
-            case 8:
-                return new Color(243, 178, 122);
-            case 16:
-                return new Color(246, 150, 100);
-            case 32:
-                return new Color(247, 124, 95);
-            case 64:
-                return new Color(247, 95, 59);
-            case 128:
-                return new Color(237, 208, 115);
-            case 256:
-                return new Color(237, 204, 98);
-            case 512:
-                return new Color(237, 201, 80);
-            case 1024:
-                return new Color(237, 197, 63);
-            case 2048:
-                return new Color(237, 194, 46);
-            default:
-                return new Color(205, 193, 180);
-
-        }
-
+        int exponent = FlatBoard.toExponent(value);
+        return exponent < TILE_BACKGROUNDS.length ? TILE_BACKGROUNDS[exponent] : TILE_BACKGROUNDS[0];
     }
 
-    // Get font of tile's text based on value
-    public Font getTileFont(int value) {
+    // Get font of tile's text based on value, scaled to the tile size
+    public Font getTileFont(int value, int tileSize) {
+        int fontSize;
         if (value < 128) {
-            return new Font(FONT_NAME, Font.BOLD, FONT_SIZE_LARGE);
-        } else if (value < 1028) {
-            return new Font(FONT_NAME, Font.BOLD, FONT_SIZE_MED);
+            fontSize = FONT_SIZE_LARGE;
+        } else if (value < 1024) {
+            fontSize = FONT_SIZE_MED;
+        } else if (value < 16384) {
+            fontSize = FONT_SIZE_SMALL;
         } else {
-            return new Font(FONT_NAME, Font.BOLD, FONT_SIZE_SMALL);
+            // 5 digits
+            fontSize = FONT_SIZE_SMALL * 4 / 5;
         }
+        return new Font(FONT_NAME, Font.BOLD, fontSize * tileSize / TILE_SIZE);
     }
 
     // Returns the size of the game board.
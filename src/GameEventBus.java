@@ -0,0 +1,171 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * What happens in a GameLogic (see setEventBus) as a stream of events, for
+ * anything that wants to follow a game without polling it: views, saving,
+ * metrics, analytics. Every event is a type and two ints:
+ *
+ *     MOVE_APPLIED   direction, score gained     (valid moves only)
+ *     TILES_MERGED   merges, score gained
+ *     TILE_SPAWNED   cell (row * size + col), exponent
+ *     SCORE_CHANGED  score, change
+ *     GAME_WON       score, 0
+ *     GAME_LOST      score, 0
+ *     UNDO, REDO     score, 0
+ *
+ * Loading a saved game publishes just the SCORE_CHANGED it ends with, not the
+ * moves replayed to get there. Until the first subscribe a GameLogic publishes
+ * nothing at all (see hasSubscribers), a subscriber only sees events published
+ * after it subscribed anyway.
+ *
+ * Events go into a ring buffer like the LMAX Disruptor's, written by the one
+ * thread playing the game and read by any number of Subscriptions, each at
+ * its own pace. Publishing never waits and never allocates: a subscriber more
+ * than the capacity behind skips the events it missed and counts them as
+ * lost, so a slow subscriber can't hold up the moves.
+ */
+public class GameEventBus {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    public enum Type {
+        MOVE_APPLIED, TILES_MERGED, TILE_SPAWNED, SCORE_CHANGED, GAME_WON, GAME_LOST, UNDO, REDO
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    // Called for every event read, on the subscriber's thread
+    public interface Handler {
+        void onEvent(long sequence, Type type, int first, int second);
+    }
+
+    private final int mask;
+
+    // Slot i holds the event with sequence sequences[i], -1 while being written
+    private final AtomicLongArray sequences;
+    private final byte[] types;
+    private final int[] firsts;
+    private final int[] seconds;
+
+    // Last sequence published, events start at 0
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private long next; // only touched by the publishing thread
+    private volatile boolean subscribed;
+
+    // capacity is rounded up to a power of two
+    public GameEventBus(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, -1);
+        }
+        types = new byte[size];
+        firsts = new int[size];
+        seconds = new int[size];
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    // Only from the thread playing the game
+    public void publish(Type type, int first, int second) {
+        long sequence = next++;
+        int i = (int) sequence & mask;
+
+        // Readers of the old event in this slot see it change and drop it
+        sequences.setOpaque(i, -1);
+        VarHandle.storeStoreFence();
+        types[i] = (byte) type.ordinal();
+        firsts[i] = first;
+        seconds[i] = second;
+        sequences.setRelease(i, sequence);
+        cursor.setRelease(sequence);
+    }
+
+    // Sequence of the last event published, -1 if none yet
+    public long getCursor() {
+        return cursor.getAcquire();
+    }
+
+    // Reader of every event published from now on
+    public Subscription subscribe() {
+        subscribed = true;
+        return new Subscription(getCursor() + 1);
+    }
+
+    // False until the first subscribe, publishers can skip working out events before
+    public boolean hasSubscribers() {
+        return subscribed;
+    }
+
+    // SUBSCRIPTIONS ============================================================
+
+    /**
+     * One subscriber's place in the stream. Use it from one thread at a time,
+     * different subscriptions don't affect each other.
+     */
+    public final class Subscription {
+
+        private long position; // sequence of the next event to read
+        private long lost;
+
+        private Subscription(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Hands up to max events published since the last poll to the handler,
+         * oldest first. Returns how many.
+         */
+        public int poll(Handler handler, int max) {
+            long published = cursor.getAcquire();
+            int handled = 0;
+
+            while (handled < max && position <= published) {
+                // Fell more than the ring behind, skip to the oldest event still in it
+                if (published - position > mask) {
+                    long oldest = published - mask;
+                    lost += oldest - position;
+                    position = oldest;
+                }
+
+                int i = (int) position & mask;
+                if (sequences.getAcquire(i) != position) {
+                    published = cursor.getAcquire();
+                    continue;
+                }
+                Type type = TYPES[types[i]];
+                int first = firsts[i];
+                int second = seconds[i];
+
+                // Overwritten while reading, the producer lapped us
+                VarHandle.loadLoadFence();
+                if (sequences.getOpaque(i) != position) {
+                    published = cursor.getAcquire();
+                    continue;
+                }
+
+                handler.onEvent(position, type, first, second);
+                position++;
+                handled++;
+            }
+            return handled;
+        }
+
+        // Events published but not read yet
+        public long getBacklog() {
+            return Math.max(0, getCursor() + 1 - position);
+        }
+
+        // Events skipped because this subscriber fell too far behind
+        public long getLost() {
+            return lost;
+        }
+
+    }
+
+}
@@ -1,60 +1,171 @@
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.InvalidPathException;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 public class GameLogic {
 
     // Probability of generating a 2 tile. not all caps because style checker complain
     private final double tileProbability = 0.9;
 
-    // CONCEPT 1: 2-D Arrays
-    private int[][] board;
+    // Board size and winning tile, only changed by loading a saved game
+    private GameRules rules;
+    private int size;
+    private int winExponent;
+
+    // CONCEPT 1: Bitboard - on a 4 x 4 board every tile is a 4-bit exponent packed
+    // into one long. Other sizes keep one exponent per byte in cells instead
+    private boolean packed;
+    private long board;
+    private byte[] cells;
+    // Kept up to date by every change to cells, null for packed boards
+    private Zobrist hash;
     private int score;
     private int bestScore;
     private GameState gameState;
 
+    // Each game draws its seed from seeds and spawns tiles from a generator made
+    // from that seed, so a game can be replayed from getSeed()
+    private final RandomGenerator seeds;
+    private long seed;
+    private SpawnRandom random;
+
+    // Saved game: a snapshot followed by one byte per valid move or undo, written
+    // off the calling thread unless the durability says otherwise
+    private final PersistenceWriter persistence;
+    private boolean replaying;
+
+    // Where the tiles of each move went, for the view to animate. Null if unused
+    private Displacements displacements;
+    private final byte[] unpacked = new byte[Bitboard.SIZE * Bitboard.SIZE]; // packed board to record, reused
+
+    // The current game from its start, null until a game is started or loaded
+    // or if games aren't recorded
+    private GameRecording recording;
+    private boolean recordingGames = true;
+
+    // What happens in the game as events, null if nobody listens
+    private GameEventBus events;
+
+    // Where new best scores go and under which name, null if nowhere
+    private Leaderboard leaderboard;
+    private String player;
+
+    // The fields above belong to the thread playing the game. Other threads (the
+    // view, an AI, a simulation) read this instead, replaced after every complete
+    // operation: a move, undo, redo, new or loaded game. Building blocks such as
+    // moveTiles, addTile and the board setters don't replace it
+    private volatile BoardSnapshot snapshot;
+
     // CONCEPT 2: Collections
-    // Includes initial board.
-    private LinkedList<int[][]> moveHistory;
-    private LinkedList<Integer> scoreHistory;
+    // Boards and scores to undo to, includes initial board.
+    public static final int DEFAULT_UNDO_DEPTH = 1024;
+    private UndoHistory history;
+    private final int undoDepth;
 
     /**
-     * Constructor sets up game state.
+     * Constructor sets up game state. Game seeds come from a randomly seeded
+     * SplittableRandom.
      */
     public GameLogic() {
-        board = new int[4][4];
+        this(new SplittableRandom());
+    }
+
+    /**
+     * Constructor sets up game state, drawing the seed of every game from seeds.
+     * Pass a generator per thread when running many games in parallel.
+     */
+    public GameLogic(RandomGenerator seeds) {
+        this(seeds, Durability.fromSystemProperty());
+    }
+
+    /**
+     * Constructor sets up game state with the given durability for saved games.
+     * Durability.NONE never touches the disk.
+     */
+    public GameLogic(RandomGenerator seeds, Durability durability) {
+        this(seeds, durability, DEFAULT_UNDO_DEPTH);
+    }
+
+    /**
+     * Constructor sets up game state, keeping at most undoDepth boards to undo
+     * to. Older boards are forgotten.
+     */
+    public GameLogic(RandomGenerator seeds, Durability durability, int undoDepth) {
+        this(GameRules.STANDARD, seeds, durability, undoDepth);
+    }
+
+    /**
+     * Constructor sets up game state for the given board size and winning tile.
+     */
+    public GameLogic(GameRules rules) {
+        this(rules, new SplittableRandom(), Durability.fromSystemProperty(), DEFAULT_UNDO_DEPTH);
+    }
+
+    /**
+     * Constructor sets up game state for the given rules, seeds, durability and
+     * undo depth, see the other constructors.
+     */
+    public GameLogic(GameRules rules, RandomGenerator seeds, Durability durability, int undoDepth) {
+        this.seeds = seeds;
+        this.undoDepth = undoDepth;
+        setRules(rules);
+        reseed(seeds.nextLong());
+        persistence = new PersistenceWriter(MoveJournal.DEFAULT_FILE, "game_stats.txt", durability,
+                Long.getLong("game.flushIntervalMillis", PersistenceWriter.DEFAULT_FLUSH_INTERVAL_MILLIS));
+
         score = 0;
         gameState = GameState.NOT_STARTED;
-        moveHistory = new LinkedList<int[][]>();
-        scoreHistory = new LinkedList<Integer>();
 
         bestScore = 0;
-        if (fileExist("game_stats.txt")) {
+        if (persistence.isEnabled() && fileExist("game_stats.txt")) {
             readFileAndSet("game_stats.txt");
         }
+        publish(null);
     }
 
     // TILE LOGIC (Ex. Merging, Sliding)
     // ====================================================
 
     public void addTile() {
-        List<Integer> empty = emptySpaces();
-        if (empty.isEmpty()) {
-            return;
+        long start = Metrics.start();
+
+        // Does nothing on a full board
+        if (packed) {
+            long before = board;
+            board = Bitboard.spawnRandom(board, random, tileProbability);
+            if (board != before && (displacements != null || recording != null || publishing())) {
+                int cell = Long.numberOfTrailingZeros(board ^ before) / 4;
+                spawned(cell, Bitboard.getExponent(board, cell / size, cell % size));
+            }
+        } else {
+            int cell = FlatBoard.spawnRandom(cells, random, tileProbability);
+            if (cell >= 0) {
+                hash.update(cell, 0, cells[cell]);
+                spawned(cell, cells[cell]);
+            }
         }
-        int coord = empty.get((int) (Math.random() * empty.size()));
-        board[(int) (coord / 10)][coord % 10] = Math.random() < tileProbability ? 2 : 4;
 
+        Metrics.ADD_TILE.stop(start);
+    }
+
+    // Tell whoever is watching where a tile spawned
+    private void spawned(int cell, int exponent) {
+        if (displacements != null) {
+            displacements.spawned(cell, exponent);
+        }
+        if (recording != null) {
+            recording.addSpawn(cell, exponent);
+        }
+        if (publishing()) {
+            events.publish(GameEventBus.Type.TILE_SPAWNED, cell, exponent);
+        }
     }
 
     public int slideUp() {
@@ -62,76 +173,29 @@ public class GameLogic {
          * NOTE: This method only slide upwards. Use transpose & reverse to orient the
          * board accordingly.
          * 
-         * Merge each column individually. Keep track of score and return at end.
+         * Every column is slid and merged at once on the packed board. Keep track of
+         * score and return at end.
          */
 
-        int moveScore = 0;
-
-        // Step 1: Clone board
-        int[][] boardCopy = new int[4][4];
-        for (int i = 0; i < board.length; i++) {
-            boardCopy[i] = Arrays.copyOf(board[i], 4);
-        }
-
-        // Step 2: Perform slide up (on every column individually)
-        for (int col = 0; col < boardCopy[0].length; col++) {
+        if (!packed) {
+            long result = FlatBoard.move(cells, size, 1, winExponent, hash);
 
-            // Step 2.1: Shift column (ex. 2 0 2 2 = 2 2 2 0)
-            LinkedList<Integer> shiftedCol = new LinkedList<Integer>();
-
-            for (int row = 0; row < boardCopy.length; row++) {
-                if (boardCopy[row][col] > 0) {
-                    shiftedCol.add(boardCopy[row][col]);
-                }
-            }
-
-            // Step 2.2: Merge column (ex. 2 2 2 0 = 4 2 0 0)
-            LinkedList<Integer> mergedCol = new LinkedList<Integer>();
-            while (shiftedCol.size() > 1) {
-                int head = shiftedCol.pop();
-                // Look at value of next
-                int next = shiftedCol.peek();
-                if (head == next) {
-                    // Merge 2 tiles (ex. 2 2 = 4)
-                    mergedCol.add(head * 2);
-                    moveScore += head * 2;
-                    shiftedCol.pop();
-                    if (head * 2 == 2048) {
-                        gameState = GameState.WIN;
-                    }
-
-                    /*
-                     * Possible feature - Second Merge: This happens when column tiles are all the
-                     * same value. Ex. 2 2 2 2
-                     * 
-                     * In this case, after the first merge: Loop 1. mergedCol: 4, shiftedCol: 2 2
-                     * (4) Loop 2. mergedCol: 8, shiftedCol:
-                     * 
-                     * (ex. 2 2 2 2 -> 4 2 2 0 -> 4 4 0 0 -> 8 0 0 0)
-                     * 
-                     * if (!mergedCol.isEmpty() && mergedTile == mergedCol.peekLast()) { score +=
-                     * mergedCol.removeLast() * 2; mergedCol.add(head * 2 * 2); } else {
-                     * mergedCol.add(head * 2); }
-                     */
-
-                } else {
-                    mergedCol.add(head);
-                }
+            // Merge tiles into the winning tile
+            if ((result & FlatBoard.WON) != 0) {
+                gameState = GameState.WIN;
             }
+            return (int) result;
+        }
 
-            // Add rest of tile that is still in list
-            mergedCol.addAll(shiftedCol);
-
-            for (int row = 0; row < boardCopy.length; row++) {
-                if (mergedCol.size() > 0) {
-                    board[row][col] = mergedCol.pop();
-                } else {
-                    board[row][col] = 0;
-                }
-            }
+        int moveScore = Bitboard.score(board, 1);
 
+        // Merge tiles into the winning tile
+        if ((Bitboard.mergedExponents(board, 1) & (1 << winExponent)) != 0) {
+            gameState = GameState.WIN;
         }
 
+        board = Bitboard.move(board, 1);
+
         return moveScore;
 
     }
@@ -140,210 +204,312 @@ public class GameLogic {
 
     // Return if a tile needs to be added
     public boolean moveTiles(int direction) {
+        long start = Metrics.start();
+        boolean changed = moveBoard(direction);
+        Metrics.MOVE_TILES.stop(start);
+        return changed;
+    }
+
+    private boolean moveBoard(int direction) {
         /*
          * 1 - up, 2 - right, 3 - down, 4 - left
          * 
-         * right - needs transpose then reverse down - needs reverse left - needs
-         * transpose up - needs none
+         * The board is moved in any direction directly, no need to transpose or
+         * reverse first. 4 x 4 boards go through the Bitboard tables.
          */
 
-        int[][] boardCopy = new int[4][4];
-        for (int i = 0; i < board.length; i++) {
-            boardCopy[i] = Arrays.copyOf(board[i], 4);
+        // Flat boards are recorded as they are, packed ones without allocating
+        if (displacements != null && packed) {
+            Bitboard.toExponents(board, unpacked, 0);
+            displacements.record(unpacked, size, direction);
+        } else if (displacements != null) {
+            displacements.record(cells, size, direction);
         }
 
-        if (direction == 2 || direction == 4) {
-            transposeBoard();
-        }
+        if (!packed) {
+            long result = FlatBoard.move(cells, size, direction, winExponent, hash);
+            score += (int) result;
 
-        if (direction == 2 || direction == 3) {
-            reverseBoard();
+            // Merge tiles into the winning tile
+            if ((result & FlatBoard.WON) != 0) {
+                gameState = GameState.WIN;
+            }
+            return (result & FlatBoard.CHANGED) != 0;
         }
 
-        score += slideUp();
+        long before = board;
 
-        // orient board back
-        if (direction == 2 || direction == 3) {
-            reverseBoard();
-        }
+        score += Bitboard.score(board, direction);
 
-        if (direction == 2 || direction == 4) {
-            transposeBoard();
+        // Merge tiles into the winning tile
+        if ((Bitboard.mergedExponents(board, direction) & (1 << winExponent)) != 0) {
+            gameState = GameState.WIN;
         }
 
-        // Check if board changed. If it did, add a tile
-        for (int row = 0; row < boardCopy.length; row++) {
-            for (int col = 0; col < boardCopy[0].length; col++) {
-                if (board[row][col] != boardCopy[row][col]) {
-                    return true;
-                }
-            }
-        }
+        board = Bitboard.move(board, direction);
 
-        return false;
+        // Check if board changed. If it did, add a tile
+        return board != before;
 
     }
 
     // IMPORTANT METHOD: Combine all methods
     public void makeMove(int direction) {
+        long start = Metrics.start();
+        int scoreBefore = score;
+        GameState stateBefore = gameState;
+        int emptyBefore = publishing() ? emptyCount() : 0;
+
         Boolean addTile = moveTiles(direction);
 
         if (addTile) {
+            if (publishing()) {
+                int gained = score - scoreBefore;
+                events.publish(GameEventBus.Type.MOVE_APPLIED, direction, gained);
+                // Every merge frees a tile
+                int merges = emptyCount() - emptyBefore;
+                if (merges > 0) {
+                    events.publish(GameEventBus.Type.TILES_MERGED, merges, gained);
+                }
+            }
             addTile();
 
-            // Only store and write valid moves
-            // Push instead of add so that it is added to front of list
-            moveHistory.push(getBoard());
-            scoreHistory.push(score);
-            writeGameStateFile();
+            // Only store, record and write valid moves
+            pushHistory();
+            writeJournal(direction);
+            record(direction);
         }
 
         checkLoss();
 
-        // delete game state file if game is won or loss, additionally update Game Stat
-        if (gameState == GameState.WIN || gameState == GameState.LOSS) {
-            deleteFile("game_state.txt");
+        // delete saved game if game is won or loss, additionally update Game Stat.
+        // Not while loading, replaying the saved game has no side effects
+        if (!replaying && (gameState == GameState.WIN || gameState == GameState.LOSS)) {
+            deleteJournal();
             updateBestScore();
         }
+
+        if (publishing()) {
+            scoreChanged(scoreBefore);
+            if (gameState != stateBefore && gameState == GameState.WIN) {
+                events.publish(GameEventBus.Type.GAME_WON, score, 0);
+            } else if (gameState != stateBefore && gameState == GameState.LOSS) {
+                events.publish(GameEventBus.Type.GAME_LOST, score, 0);
+            }
+        }
+
+        publish(addTile ? displacements : null);
+        Metrics.MAKE_MOVE.stop(start);
     }
 
     public boolean undoMove() {
+        long start = Metrics.start();
+        boolean undone = false;
+
+        if (!history.isEmpty() && gameState == GameState.STARTED) {
+
+            // Step back to the board before the most recent move. The oldest
+            // board can't be removed, undoing there just resets to it
+            int scoreBefore = score;
+            history.undo();
+            restoreHistory();
+            if (publishing()) {
+                events.publish(GameEventBus.Type.UNDO, score, 0);
+                scoreChanged(scoreBefore);
+            }
 
-        if (!moveHistory.isEmpty() && gameState == GameState.STARTED) {
+            // update file
+            writeJournal(MoveJournal.UNDO);
+            record(MoveJournal.UNDO);
+            publish(null);
+            undone = true;
+        }
 
-            // prevent user from removing the initial board
-            if (moveHistory.size() == 1) {
-                board = moveHistory.peek();
-                score = scoreHistory.peek();
-            } else {
-                // Remove most recent move
-                moveHistory.pop();
-                // Get board before that move
-                board = moveHistory.peek();
-                scoreHistory.pop();
-                score = scoreHistory.peek();
+        Metrics.UNDO_MOVE.stop(start);
+        return undone;
+    }
+
+    // Move forward again to a board that was undone, until the next move
+    public boolean redoMove() {
+        long start = Metrics.start();
+        boolean redone = false;
+        int scoreBefore = score;
+
+        if (gameState == GameState.STARTED && history.redo()) {
+            restoreHistory();
+            if (publishing()) {
+                events.publish(GameEventBus.Type.REDO, score, 0);
+                scoreChanged(scoreBefore);
             }
 
             // update file
-            writeGameStateFile();
-            return true;
+            writeJournal(MoveJournal.REDO);
+            record(MoveJournal.REDO);
+            publish(null);
+            redone = true;
         }
 
-        return false;
+        Metrics.REDO_MOVE.stop(start);
+        return redone;
+    }
+
+    private void pushHistory() {
+        if (packed) {
+            history.push(board, score);
+        } else {
+            history.push(cells, score);
+        }
+    }
+
+    // Set board and score to the current history entry
+    private void restoreHistory() {
+        if (packed) {
+            board = history.board();
+        } else {
+            history.copyBoard(cells);
+            hash.reset(cells);
+        }
+        score = history.score();
     }
 
     // BOARD MANIPULATION =======================================================
 
     // transpose - rows -> cols, cols -> rows
     public void transposeBoard() {
-        int[][] transposed = new int[4][4];
-        for (int row = 0; row < board.length; row++) {
-            for (int col = 0; col < board[0].length; col++) {
-                transposed[col][row] = board[row][col];
-            }
+        if (packed) {
+            board = Bitboard.transpose(board);
+        } else {
+            FlatBoard.transpose(cells, size);
+            hash.reset(cells);
         }
-
-        board = transposed;
     }
 
     // reversing values in each col
     public void reverseBoard() {
-        int[][] reversed = new int[4][4];
-        for (int col = 0; col < board[0].length; col++) {
-            for (int row = 0; row < board.length; row++) {
-                reversed[board.length - 1 - row][col] = board[row][col];
-            }
+        if (packed) {
+            board = Bitboard.reverse(board);
+        } else {
+            FlatBoard.reverse(cells, size);
+            hash.reset(cells);
         }
-
-        board = reversed;
     }
 
     // FILE I/0 =============================================================
 
     // CONCEPT 3: File I/O
-    public void writeGameStateFile() {
-        File file;
-
-        // Try to write to existing file. If it doesn't exist, create new file.
-        try {
-            file = Paths.get("game_state.txt").toFile();
-        } catch (InvalidPathException e) {
-            file = new File("game_state.txt");
+    // Replace the saved game with a snapshot of the current game
+    public void writeSnapshot() {
+        if (!persistence.isEnabled()) {
+            return;
         }
 
-        BufferedWriter bw = null;
-
-        try {
+        long start = Metrics.start();
+        persistence.saveSnapshot(takeSnapshot());
+        Metrics.WRITE_SNAPSHOT.stop(start);
+    }
 
-            // Write board to file, in format ex. 2 2 2 2 (row 1)
-            bw = new BufferedWriter(new FileWriter(file));
+    // Everything needed to continue the game from here, see MoveJournal.Snapshot
+    private MoveJournal.Snapshot takeSnapshot() {
+        int[] historyScores = new int[history.size() + history.redoSize()];
+        byte[] historyBoards = new byte[historyScores.length * size * size];
+        history.copyTo(historyBoards, historyScores);
 
-            // Store board
-            for (int row = 0; row < board.length; row++) {
-                for (int col = 0; col < board[0].length; col++) {
-                    bw.write(board[row][col] + " ");
-                }
-                bw.newLine();
-            }
+        return new MoveJournal.Snapshot(size, winExponent, seed, random.getState(), getExponents(), score,
+                historyBoards, historyScores, history.redoSize());
+    }
 
-            // Store score
-            bw.write(String.valueOf(score));
+    // Continue from a snapshot as taken by takeSnapshot, with its size and winning tile
+    private void restoreSnapshot(MoveJournal.Snapshot saved) {
+        setRules(new GameRules(saved.size, 1 << saved.winExponent));
 
-        } catch (IOException e) {
-            System.out.println("Error: " + e);
+        seed = saved.seed;
+        random = new SpawnRandom(saved.seed);
+        random.setState(saved.randomState);
+        setExponents(saved.board);
+        score = saved.score;
 
-            // Close file
-        } finally {
-            try {
-                if (bw != null) {
-                    bw.close();
-                }
-            } catch (Exception ex) {
-                System.out.println("Can't close BufferedWriter: " + ex);
-            }
-        }
+        history.restore(saved.historyBoards, saved.historyScores, saved.historyScores.length,
+                saved.historyRedo);
     }
 
-    public void writeGameStatsFile() {
-        File file;
-
-        // Try to write to existing file. If it doesn't exist, create new file.
-        try {
-            file = Paths.get("game_stats.txt").toFile();
-        } catch (InvalidPathException e) {
-            file = new File("game_stats.txt");
+    // Append a valid move or undo to the saved game, compacting it now and then
+    private void writeJournal(int event) {
+        if (replaying) {
+            return;
         }
 
-        BufferedWriter bw = null;
+        // Game wasn't started by newGame or loadGame (ex. a board set by a test),
+        // don't touch the saved game
+        if (!persistence.hasSnapshot()) {
+            return;
+        }
 
-        try {
-            // Write board to file, in format ex. 2 2 2 2 (row 1)
-            bw = new BufferedWriter(new FileWriter(file));
+        long start = Metrics.start();
+        persistence.appendEvent(event);
+        Metrics.WRITE_JOURNAL.stop(start);
 
-            // Store score
-            bw.write(String.valueOf(bestScore));
-            bw.newLine();
-            bw.flush();
+        if (persistence.needsCompaction()) {
+            writeSnapshot();
+        }
+    }
 
+    // Rebuild the game from the saved snapshot and the moves made after it
+    private void replayJournal() {
+        try {
+            MoveJournal.Contents contents = persistence.readJournal();
+
+            // Continue with the saved game's size and winning tile
+            restoreSnapshot(contents.snapshot);
+
+            replaying = true;
+            for (byte event : contents.events) {
+                if (event == MoveJournal.UNDO) {
+                    undoMove();
+                } else if (event == MoveJournal.REDO) {
+                    redoMove();
+                } else if (event >= 1 && event <= 4) {
+                    makeMove(event);
+                }
+                // Anything else isn't an event (a damaged file), skip it
+            }
         } catch (IOException e) {
             System.out.println("Error: " + e);
-
-            // Close file
         } finally {
-            try {
-                if (bw != null) {
-                    bw.close();
-                }
-            } catch (Exception ex) {
-                System.out.println("Can't close BufferedWriter: " + ex);
-            }
+            replaying = false;
         }
+    }
 
+    private void deleteJournal() {
+        if (persistence.hasSnapshot()) {
+            persistence.deleteGame();
+        }
+    }
+
+    /**
+     * Writes everything still waiting in the background writer, call before
+     * reading the saved game from another GameLogic.
+     */
+    public void flush() {
+        persistence.flush();
+    }
+
+    // True if there is a game to load, saved either as a journal or as text
+    public static boolean hasSavedGame() {
+        return fileExist(MoveJournal.DEFAULT_FILE) || fileExist("game_state.txt");
+    }
+
+    public void writeGameStatsFile() {
+        long start = Metrics.start();
+
+        // Only the latest best score is written
+        persistence.saveBestScore(bestScore);
+        Metrics.WRITE_STATS.stop(start);
     }
 
     // CONCEPT 3: File I/O
     // Read from fileName
     public void readFileAndSet(String fileName) {
+        long start = Metrics.start();
 
         BufferedReader br = null;
         try {
@@ -352,13 +518,14 @@ public class GameLogic {
             br = new BufferedReader(new FileReader(file));
 
             if (fileName.equals("game_state.txt")) {
-                for (int i = 0; i < 4; i++) {
+                for (int i = 0; i < Bitboard.SIZE; i++) {
                     if ((line = br.readLine()) != null) {
                         // put each value in string into array as element
                         String[] value = line.split(" ");
                         // assign value to board
                         for (int j = 0; j < value.length; j++) {
-                            board[i][j] = Integer.parseInt(value[j]);
+                            board = Bitboard.setExponent(board, i, j,
+                                    Bitboard.toExponent(Integer.parseInt(value[j])));
                         }
 
                     }
@@ -387,14 +554,18 @@ public class GameLogic {
                 System.out.println("Can't close BufferedReader: " + ex);
             }
         }
+
+        Metrics.READ_FILE.stop(start);
     }
 
     // delete file when game ends/user won
     public void deleteFile(String fileName) {
+        long start = Metrics.start();
         if (fileExist(fileName)) {
-            File file = new File("game_state.txt");
+            File file = new File(fileName);
             file.delete();
         }
+        Metrics.DELETE_FILE.stop(start);
     }
 
     public static boolean fileExist(String fileName) {
@@ -405,50 +576,24 @@ public class GameLogic {
     // GAME STATE =========================================================
 
     public void checkLoss() {
+        long start = Metrics.start();
 
-        if (!emptySpaces().isEmpty()) {
-            return;
+        // Lost once no direction changes the board
+        if (!hasLegalMove()) {
+            gameState = GameState.LOSS;
         }
 
-        // check if same number in cols
-        for (int col = 0; col < board[0].length; col++) {
-
-            LinkedList<Integer> checkingCol = new LinkedList<Integer>();
-
-            for (int row = 0; row < board.length; row++) {
-                checkingCol.add(board[row][col]);
-
-            }
-
-            while (checkingCol.size() > 1) {
-                int head = checkingCol.pop();
-                int next = checkingCol.peek();
-                if (head == next) {
-                    return;
-                }
-            }
-        }
-
-        // check if same number in rows
-        for (int row = 0; row < board.length; row++) {
-
-            LinkedList<Integer> checkingCol = new LinkedList<Integer>();
-
-            for (int col = 0; col < board[0].length; col++) {
-                checkingCol.add(board[row][col]);
-
-            }
+        Metrics.CHECK_LOSS.stop(start);
+    }
 
-            while (checkingCol.size() > 1) {
-                int head = checkingCol.pop();
-                int next = checkingCol.peek();
-                if (head == next) {
-                    return;
-                }
-            }
-        }
+    // True if at least one direction changes the board. Doesn't allocate.
+    public boolean hasLegalMove() {
+        return packed ? Bitboard.hasLegalMove(board) : FlatBoard.hasLegalMove(cells, size);
+    }
 
-        gameState = GameState.LOSS;
+    // Bit d set if moving in direction d changes the board. Doesn't allocate.
+    public int legalMoves() {
+        return packed ? Bitboard.legalMoves(board) : FlatBoard.legalMoves(cells, size);
     }
 
     public GameState getGameState() {
@@ -461,41 +606,164 @@ public class GameLogic {
      * reset (re-)sets the game state to start a new game.
      */
     public void newGame() {
+        newGame(seeds.nextLong());
+    }
+
+    /**
+     * Starts a new game whose tiles spawn from the given seed. Replaying the same
+     * moves on a game with the same seed gives the same boards.
+     */
+    public void newGame(long gameSeed) {
+        int scoreBefore = score;
+        recording = null;
+        reseed(gameSeed);
         updateBestScore();
-        board = new int[4][4];
+        clearBoard();
         gameState = GameState.STARTED;
         score = 0;
 
         // Empty history
-        moveHistory = new LinkedList<int[][]>();
-        scoreHistory = new LinkedList<Integer>();
+        history.clear();
         addTile();
         addTile();
 
-        // Starting board, add to history and write to file
-        moveHistory.push(getBoard());
-        scoreHistory.push(score);
-        writeGameStateFile();
+        // Starting board, add to history and start a new saved game
+        pushHistory();
+        writeSnapshot();
+        startRecording();
+        if (publishing()) {
+            scoreChanged(scoreBefore);
+        }
+        publish(null);
 
     }
 
     public void loadGame() {
+        long start = Metrics.start();
+        int scoreBefore = score;
 
+        recording = null;
         updateBestScore();
         gameState = GameState.STARTED;
-        readFileAndSet("game_state.txt");
 
         // Empty history
-        moveHistory = new LinkedList<int[][]>();
-        scoreHistory = new LinkedList<Integer>();
+        history.clear();
+
+        if (persistence.journalExists()) {
+            replayJournal();
+        } else {
+            // Text saves from older versions don't know their seed, spawn from a fresh
+            // one. They are always standard games
+            setRules(GameRules.STANDARD);
+            reseed(seeds.nextLong());
+            readFileAndSet("game_state.txt");
+
+            pushHistory();
+        }
+
+        // Continue in a compacted journal. The old text save goes once the journal
+        // is on disk, without one (Durability.NONE) it stays the saved game
+        writeSnapshot();
+        if (fileExist("game_state.txt") && persistence.hasSnapshot() && persistence.journalExists()) {
+            deleteFile("game_state.txt");
+        }
+
+        // Recording starts where the saved game left off. The replayed moves
+        // published nothing, only where they ended up
+        startRecording();
+        if (publishing()) {
+            scoreChanged(scoreBefore);
+        }
+        publish(null);
+        Metrics.LOAD_GAME.stop(start);
+    }
+
+    /**
+     * Continues a game saved elsewhere as just its board and score (see
+     * SlotStore). Like old text saves, tiles spawn from a fresh seed and the
+     * game is a standard 4 x 4 one.
+     */
+    public void loadGame(long packedBoard, int savedScore) {
+        int scoreBefore = score;
+        recording = null;
+        updateBestScore();
+        gameState = GameState.STARTED;
+        history.clear();
+
+        setRules(GameRules.STANDARD);
+        reseed(seeds.nextLong());
+        board = packedBoard;
+        score = savedScore;
+        pushHistory();
+        writeSnapshot();
+
+        startRecording();
+        if (publishing()) {
+            scoreChanged(scoreBefore);
+        }
+        publish(null);
+    }
 
-        moveHistory.push(getBoard());
-        scoreHistory.push(score);
+    /**
+     * Starts the game a recording starts with. Applying the recording's events
+     * then plays it again exactly, see GameReplay. Use a GameLogic with
+     * Durability.NONE so the replay doesn't touch the saved game.
+     */
+    public void startReplay(GameRecording replayed) {
+        restoreSnapshot(replayed.getStart());
+        gameState = GameState.STARTED;
+        recording = new GameRecording(replayed.getStart(), undoDepth);
+        publish(null);
 
     }
 
     // MISC =========================================================
 
+    /*
+     * Switch to a board of the given size and winning tile. The board and undo
+     * history are only reallocated if the size changes.
+     */
+    private void setRules(GameRules newRules) {
+        if (rules == null || newRules.getSize() != size) {
+            size = newRules.getSize();
+            packed = newRules.isPacked();
+            board = 0;
+            cells = packed ? null : new byte[newRules.getCells()];
+            hash = packed ? null : new Zobrist(size);
+            history = packed ? new UndoHistory(undoDepth) : new UndoHistory(undoDepth, newRules.getCells());
+        }
+        rules = newRules;
+        winExponent = newRules.getWinExponent();
+    }
+
+    public GameRules getRules() {
+        return rules;
+    }
+
+    // Number of rows and columns
+    public int getSize() {
+        return size;
+    }
+
+    private void clearBoard() {
+        if (packed) {
+            board = 0;
+        } else {
+            Arrays.fill(cells, (byte) 0);
+            hash.reset(cells);
+        }
+    }
+
+    private void reseed(long gameSeed) {
+        seed = gameSeed;
+        random = new SpawnRandom(gameSeed);
+    }
+
+    // Seed the current game's tiles spawn from
+    public long getSeed() {
+        return seed;
+    }
+
     public int getScore() {
         return score;
     }
@@ -504,61 +772,211 @@ public class GameLogic {
         return bestScore;
     }
 
+    // Best score kept elsewhere (see SlotStore), only raises it
+    public void setBestScore(int savedBestScore) {
+        bestScore = Math.max(bestScore, savedBestScore);
+        publish(null);
+    }
+
     // update best score
     public void updateBestScore() {
         if (score > bestScore) {
             bestScore = score;
             writeGameStatsFile();
+            if (leaderboard != null) {
+                leaderboard.submit(player, bestScore);
+            }
         }
     }
 
+    // Submit every new best score to the leaderboard under the player's name, null to stop
+    public void setLeaderboard(Leaderboard leaderboard, String player) {
+        this.leaderboard = leaderboard;
+        this.player = player;
+    }
+
     public List<Integer> emptySpaces() {
         List<Integer> empty = new ArrayList<Integer>();
-        for (int row = 0; row < board.length; row++) {
-            for (int col = 0; col < board[row].length; col++) {
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
                 // check if empty
-                if (board[row][col] == 0) {
+                if (getExponent(row, col) == 0) {
                     // For Testing: System.out.println("expected row: " + row + ", expected col:" +
                     // col);
-                    empty.add((row * 10) + col); // store coord in format: rowcol
+                    empty.add((row * size) + col); // store coord as index: row * size + col
                 }
             }
         }
         return empty;
     }
 
+    /*
+     * Exponents of the board, one byte per tile row by row (see FlatBoard). This
+     * is how boards are passed around and saved; tile values only appear in
+     * getBoard, getTile and on screen.
+     */
+    public byte[] getExponents() {
+        byte[] exponents = new byte[size * size];
+        copyExponents(exponents);
+        return exponents;
+    }
+
+    // Same as getExponents into an existing array, doesn't allocate
+    public void copyExponents(byte[] exponents) {
+        if (packed) {
+            Bitboard.toExponents(board, exponents, 0);
+        } else {
+            System.arraycopy(cells, 0, exponents, 0, cells.length);
+        }
+    }
+
+    // Takes exponents as returned by getExponents
+    public void setExponents(byte[] exponents) {
+        if (exponents.length != size * size) {
+            throw new IllegalArgumentException("Board must have " + size * size + " tiles");
+        }
+        if (packed) {
+            board = Bitboard.fromExponents(exponents, 0);
+        } else {
+            System.arraycopy(exponents, 0, cells, 0, cells.length);
+            hash.reset(cells);
+        }
+    }
+
+    /*
+     * Identity of the board for caches and deduplication. The packed 4 x 4
+     * board is its own exact key; other sizes use their Zobrist hash.
+     */
+    public long getHash() {
+        return packed ? board : hash.hash();
+    }
+
+    // Same for every rotation and reflection of the board
+    public long getCanonicalHash() {
+        return packed ? Bitboard.canonical(board) : hash.canonicalHash();
+    }
+
+    /*
+     * The game after the last complete operation. Safe to call from any thread,
+     * and cheap: nothing is copied, the snapshot never changes.
+     */
+    public BoardSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // Replace the snapshot with the game as it is now, with moves if this was a move
+    private void publish(Displacements moves) {
+        snapshot = new BoardSnapshot(this, moves);
+    }
+
+    // Valid moves, undos and redos of the current game so far, null before the first game
+    public GameRecording getRecording() {
+        return recording;
+    }
+
+    /**
+     * Whether games started or loaded from now on are recorded, on by default.
+     * Off drops the current recording. A recording grows by a byte per move and
+     * spawn, turn it off where games aren't replayed (see GameSession). Replays
+     * are always recorded.
+     */
+    public void setRecording(boolean recordingGames) {
+        this.recordingGames = recordingGames;
+        if (!recordingGames) {
+            recording = null;
+        }
+    }
+
+    private void startRecording() {
+        if (recordingGames) {
+            recording = new GameRecording(takeSnapshot(), undoDepth);
+        }
+    }
+
+    private void record(int event) {
+        if (recording != null) {
+            recording.addEvent(event);
+        }
+    }
+
+    // Publish what happens in the game from now on, null to stop. See GameEventBus
+    public void setEventBus(GameEventBus events) {
+        this.events = events;
+    }
+
+    // Events go out for moves made now, not for the journal being replayed on
+    // load, and only once somebody subscribed
+    private boolean publishing() {
+        return events != null && !replaying && events.hasSubscribers();
+    }
+
+    // SCORE_CHANGED if the score isn't what it was
+    private void scoreChanged(int scoreBefore) {
+        if (score != scoreBefore) {
+            events.publish(GameEventBus.Type.SCORE_CHANGED, score, score - scoreBefore);
+        }
+    }
+
+    private int emptyCount() {
+        return packed ? Bitboard.emptyCount(board) : FlatBoard.emptyCount(cells);
+    }
+
+    // Record where the tiles go on every move from now on, null to stop
+    public void setDisplacements(Displacements displacements) {
+        this.displacements = displacements;
+    }
+
     public int[][] getBoard() {
-        int[][] boardCopy = new int[4][4];
-        for (int i = 0; i < board.length; i++) {
-            boardCopy[i] = Arrays.copyOf(board[i], 4);
+        return packed ? Bitboard.toArray(board) : FlatBoard.toArray(cells, size);
+    }
+
+    // Packed copy of the board, see Bitboard for the layout. Only for 4 x 4 boards
+    public long getPackedBoard() {
+        if (!packed) {
+            throw new IllegalStateException("Only 4 x 4 boards are packed: " + rules);
         }
-        return boardCopy;
+        return board;
     }
 
 // TESTING =========================================================
 
     public void printBoard() {
-        for (int row = 0; row < board.length; row++) {
-            for (int col = 0; col < board[row].length; col++) {
-                System.out.print(board[row][col] + ", ");
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                System.out.print(getTile(row, col) + ", ");
             }
             System.out.println();
         }
         System.out.println();
     }
 
-    // For testing only.
+    // For testing only. board2 must have the game's size.
     public void setBoard(int[][] board2) {
-        int[][] boardCopy = new int[4][4];
-        for (int i = 0; i < board.length; i++) {
-            boardCopy[i] = Arrays.copyOf(board2[i], 4);
+        if (board2.length != size) {
+            throw new IllegalArgumentException("Board must be " + size + " x " + size);
         }
+        if (packed) {
+            board = Bitboard.fromArray(board2);
+        } else {
+            FlatBoard.fromArray(board2, cells);
+            hash.reset(cells);
+        }
+    }
 
-        board = boardCopy;
+    // For testing only. Takes a board packed as described in Bitboard.
+    public void setPackedBoard(long packedBoard) {
+        if (!packed) {
+            throw new IllegalStateException("Only 4 x 4 boards are packed: " + rules);
+        }
+        board = packedBoard;
     }
 
     public int getTile(int row, int col) {
-        return board[row][col];
+        return Bitboard.toValue(getExponent(row, col));
+    }
+
+    private int getExponent(int row, int col) {
+        return packed ? Bitboard.getExponent(board, row, col) : cells[row * size + col];
     }
 
     /**
@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a GameLogic on its own thread. Moves and other commands are submitted
+ * from any thread (the key listener on the EDT) into a bounded queue and
+ * applied in order. After applying everything queued the loop calls the
+ * listener once, which reads the logic's latest BoardSnapshot, so a burst of
+ * keys costs one repaint, and painting or saving never holds up the next move.
+ *
+ * Once given to a loop the GameLogic must only be used by it. To follow the
+ * game from another thread, read snapshots or subscribe to getEvents().
+ */
+public class GameLoop {
+
+    public static final int QUEUE_CAPACITY = 64;
+
+    // Commands besides the directions 1 - up, 2 - right, 3 - down, 4 - left
+    public static final int UNDO = MoveJournal.UNDO;
+    public static final int REDO = MoveJournal.REDO;
+    public static final int NEW_GAME = 7;
+    public static final int LOAD_GAME = 8;
+    public static final int RECORDING = 9; // copy and save the recording, see takeRecording
+
+    private final GameLogic logic;
+    private final Displacements displacements = new Displacements();
+    private final GameEventBus events = new GameEventBus(GameEventBus.DEFAULT_CAPACITY);
+    private final BlockingQueue<Integer> commands = new ArrayBlockingQueue<Integer>(QUEUE_CAPACITY);
+    private final Runnable listener;
+    private final Thread thread;
+
+    private final AtomicReference<GameRecording> recording = new AtomicReference<GameRecording>();
+    private volatile boolean closed;
+
+    /**
+     * Starts the loop. listener runs on the loop's thread after every new
+     * snapshot, it should hand over to its own thread and return.
+     */
+    public GameLoop(GameLogic logic, Runnable listener) {
+        this.logic = logic;
+        this.listener = listener;
+        logic.setDisplacements(displacements);
+        logic.setEventBus(events);
+
+        thread = new Thread(new Runnable() {
+            public void run() {
+                loop();
+            }
+        }, "game-logic");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Queue a direction or command. False if the queue is full and it was dropped
+    public boolean submit(int command) {
+        return !closed && commands.offer(command);
+    }
+
+    // The game after the last command applied
+    public BoardSnapshot getSnapshot() {
+        return logic.getSnapshot();
+    }
+
+    // Moves, merges, spawns and so on as the loop applies them, see GameEventBus
+    public GameEventBus getEvents() {
+        return events;
+    }
+
+    /*
+     * Copy of the game's recording made by the last RECORDING command, once.
+     * Null if there is none (yet).
+     */
+    public GameRecording takeRecording() {
+        return recording.getAndSet(null);
+    }
+
+    public void close() {
+        closed = true;
+        thread.interrupt();
+    }
+
+    private void loop() {
+        try {
+            while (!closed) {
+                apply(commands.take());
+
+                // Apply whatever came in meanwhile before telling the listener
+                Integer next;
+                while ((next = commands.poll()) != null) {
+                    apply(next);
+                }
+
+                listener.run();
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private void apply(int command) {
+        try {
+            switch (command) {
+                case UNDO:
+                    logic.undoMove();
+                    break;
+                case REDO:
+                    logic.redoMove();
+                    break;
+                case NEW_GAME:
+                    logic.newGame();
+                    break;
+                case LOAD_GAME:
+                    logic.loadGame();
+                    break;
+                case RECORDING:
+                    copyRecording();
+                    break;
+                default:
+                    // Only move if game is being played
+                    if (logic.getGameState() == GameState.STARTED) {
+                        logic.makeMove(command);
+                    }
+                    break;
+            }
+        } catch (RuntimeException e) {
+            // Keep the game running, the command is lost
+            System.out.println("Error: " + e);
+        }
+    }
+
+    // Hand a copy to takeRecording and save it for replaying headlessly (see GameReplay)
+    private void copyRecording() {
+        GameRecording current = logic.getRecording();
+        if (current == null) {
+            return;
+        }
+        GameRecording copy = current.copy();
+        try {
+            copy.save(GameRecording.DEFAULT_FILE);
+        } catch (IOException e) {
+            System.out.println("Error: " + e);
+        }
+        recording.set(copy);
+    }
+
+}
@@ -0,0 +1,128 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Everything needed to play a game again exactly: the game as it started (a
+ * MoveJournal.Snapshot, which holds the seed and the spawn generator's state),
+ * the undo depth, and one byte per valid move, undo or redo after that.
+ *
+ * The tile spawned after every move is recorded too, one byte each (cell in
+ * the low 6 bits, 4 instead of 2 in bit 6). Spawns follow from the seed, so
+ * they aren't needed to replay; comparing them is how GameReplay checks a
+ * replay came out identical.
+ *
+ * A saved recording is a game journal file (see MoveJournal), spawns left out.
+ */
+public class GameRecording {
+
+    public static final String DEFAULT_FILE = "game_recording.bin";
+
+    private final MoveJournal.Snapshot start;
+    private final int undoDepth;
+
+    private byte[] events = new byte[64];
+    private int eventCount;
+    private byte[] spawns = new byte[64];
+    private int spawnCount;
+
+    public GameRecording(MoveJournal.Snapshot start, int undoDepth) {
+        this.start = start;
+        this.undoDepth = undoDepth;
+    }
+
+    // A direction (1 - 4), MoveJournal.UNDO or MoveJournal.REDO
+    public void addEvent(int event) {
+        if (eventCount == events.length) {
+            events = Arrays.copyOf(events, eventCount * 2);
+        }
+        events[eventCount++] = (byte) event;
+    }
+
+    public void addSpawn(int cell, int exponent) {
+        if (spawnCount == spawns.length) {
+            spawns = Arrays.copyOf(spawns, spawnCount * 2);
+        }
+        spawns[spawnCount++] = (byte) (cell | (exponent - 1) << 6);
+    }
+
+    public MoveJournal.Snapshot getStart() {
+        return start;
+    }
+
+    public GameRules getRules() {
+        return new GameRules(start.size, 1 << start.winExponent);
+    }
+
+    public long getSeed() {
+        return start.seed;
+    }
+
+    public int getUndoDepth() {
+        return undoDepth;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public int getEvent(int i) {
+        return events[i];
+    }
+
+    public int getSpawnCount() {
+        return spawnCount;
+    }
+
+    public int getSpawnCell(int i) {
+        return spawns[i] & 0x3F;
+    }
+
+    public int getSpawnExponent(int i) {
+        return (spawns[i] >> 6) + 1;
+    }
+
+    // True if both start from the same board and have the same events and spawns
+    public boolean matches(GameRecording other) {
+        return start.seed == other.start.seed && start.randomState == other.start.randomState
+                && start.score == other.start.score && Arrays.equals(start.board, other.start.board)
+                && Arrays.equals(events, 0, eventCount, other.events, 0, other.eventCount)
+                && Arrays.equals(spawns, 0, spawnCount, other.spawns, 0, other.spawnCount);
+    }
+
+    // Copy that later moves of the game don't change
+    public GameRecording copy() {
+        GameRecording copy = new GameRecording(start, undoDepth);
+        copy.events = Arrays.copyOf(events, Math.max(eventCount, 1));
+        copy.eventCount = eventCount;
+        copy.spawns = Arrays.copyOf(spawns, Math.max(spawnCount, 1));
+        copy.spawnCount = spawnCount;
+        return copy;
+    }
+
+    // FILE I/O =================================================================
+
+    public void save(String fileName) throws IOException {
+        MoveJournal journal = new MoveJournal(fileName);
+        try {
+            journal.writeSnapshot(start, true);
+            journal.append(events, eventCount);
+            journal.sync();
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Reads a recording saved by save, or any game journal. Its spawns are
+     * empty; replaying it fills them in.
+     */
+    public static GameRecording load(String fileName, int undoDepth) throws IOException {
+        MoveJournal.Contents contents = new MoveJournal(fileName).read();
+        GameRecording recording = new GameRecording(contents.snapshot, undoDepth);
+        for (byte event : contents.events) {
+            recording.addEvent(event);
+        }
+        return recording;
+    }
+
+}
@@ -0,0 +1,141 @@
+import java.util.SplittableRandom;
+
+/**
+ * Plays a GameRecording again on a GameLogic of its own, through the same
+ * makeMove, undoMove and redoMove calls as the original game. Spawns come
+ * from the recorded generator state, so boards, scores and spawns come out
+ * identical, which isIdentical checks.
+ *
+ * Run it headless with step or run, or hand getLogic() to a GameLoop and feed
+ * the loop nextEvent() at any speed, as GameBoard.replay does. Not both: the
+ * logic then belongs to the loop's thread.
+ */
+public class GameReplay {
+
+    private final GameRecording recording;
+    private final GameLogic logic;
+    private int next; // index of the next event
+
+    public GameReplay(GameRecording recording) {
+        this.recording = recording;
+        logic = new GameLogic(recording.getRules(), new SplittableRandom(recording.getSeed()), Durability.NONE,
+                recording.getUndoDepth());
+        logic.startReplay(recording);
+    }
+
+    public GameLogic getLogic() {
+        return logic;
+    }
+
+    public GameRecording getRecording() {
+        return recording;
+    }
+
+    public boolean hasNext() {
+        return next < recording.getEventCount();
+    }
+
+    // Next event without applying it or moving past it
+    public int peekEvent() {
+        return recording.getEvent(next);
+    }
+
+    // Next event without applying it, for a GameLoop running the logic
+    public int nextEvent() {
+        return recording.getEvent(next++);
+    }
+
+    // Apply the next event
+    public void step() {
+        int event = nextEvent();
+        if (event == MoveJournal.UNDO) {
+            logic.undoMove();
+        } else if (event == MoveJournal.REDO) {
+            logic.redoMove();
+        } else {
+            logic.makeMove(event);
+        }
+    }
+
+    // Apply every event left, returns how many
+    public int run() {
+        int count = 0;
+        while (hasNext()) {
+            step();
+            count++;
+        }
+        return count;
+    }
+
+    /*
+     * True if the replay so far made the same moves and spawns as the recording.
+     * Recordings read from a file have no spawns, then only the moves count.
+     */
+    public boolean isIdentical() {
+        GameRecording replayed = logic.getRecording();
+        if (replayed.getEventCount() > recording.getEventCount()) {
+            return false;
+        }
+        for (int i = 0; i < replayed.getEventCount(); i++) {
+            if (replayed.getEvent(i) != recording.getEvent(i)) {
+                return false;
+            }
+        }
+        if (recording.getSpawnCount() == 0) {
+            return true;
+        }
+        if (replayed.getSpawnCount() > recording.getSpawnCount()) {
+            return false;
+        }
+        for (int i = 0; i < replayed.getSpawnCount(); i++) {
+            if (replayed.getSpawnCell(i) != recording.getSpawnCell(i)
+                    || replayed.getSpawnExponent(i) != recording.getSpawnExponent(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replays a saved recording headlessly and prints how it ended and how
+     * fast it ran. Options: file=game_recording.bin repeat=1
+     */
+    public static void main(String[] args) throws Exception {
+        String file = GameRecording.DEFAULT_FILE;
+        int repeat = 1;
+
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            switch (pair[0]) {
+                case "file":
+                    file = pair[1];
+                    break;
+                case "repeat":
+                    repeat = Integer.parseInt(pair[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + pair[0]);
+            }
+        }
+
+        GameRecording recording = GameRecording.load(file, GameLogic.DEFAULT_UNDO_DEPTH);
+        GameReplay replay = null;
+        long moves = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < repeat; i++) {
+            replay = new GameReplay(recording);
+            moves += replay.run();
+        }
+        long nanos = System.nanoTime() - start;
+
+        GameLogic logic = replay.getLogic();
+        System.out.printf("%s, seed %d: %d moves, score %d, %s%n", recording.getRules(), recording.getSeed(),
+                recording.getEventCount(), logic.getScore(), logic.getGameState());
+        System.out.printf("Replayed %d moves in %.1f ms (%.0f moves/s)%n", moves, nanos / 1e6,
+                moves * 1e9 / Math.max(nanos, 1));
+    }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Board size and winning tile of a game. The standard game is 4 x 4 and is won
+ * by making a 2048 tile.
+ */
+public final class GameRules {
+
+    public static final int MIN_SIZE = 3;
+    public static final int MAX_SIZE = 8;
+
+    public static final GameRules STANDARD = new GameRules(4, 2048);
+
+    private final int size;
+    private final int winExponent;
+
+    /**
+     * Rules for a size x size board won by making winTile, a power of two.
+     */
+    public GameRules(int size, int winTile) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Board size must be " + MIN_SIZE + " to " + MAX_SIZE
+                    + ": " + size);
+        }
+        this.size = size;
+        this.winExponent = FlatBoard.toExponent(winTile);
+
+        // 4 x 4 boards are packed with 4 bits per tile, the rest have a byte
+        int maxExponent = isPacked() ? Bitboard.MAX_EXPONENT : FlatBoard.MAX_EXPONENT;
+        if (winExponent < 2 || winExponent > maxExponent) {
+            throw new IllegalArgumentException("Winning tile must be 4 to " + (1 << maxExponent)
+                    + " on a " + size + " x " + size + " board: " + winTile);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getCells() {
+        return size * size;
+    }
+
+    public int getWinExponent() {
+        return winExponent;
+    }
+
+    public int getWinTile() {
+        return 1 << winExponent;
+    }
+
+    // True if boards are packed into a long, see Bitboard. Other sizes use FlatBoard
+    public boolean isPacked() {
+        return size == Bitboard.SIZE;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof GameRules)) {
+            return false;
+        }
+        GameRules rules = (GameRules) other;
+        return size == rules.size && winExponent == rules.winExponent;
+    }
+
+    @Override
+    public int hashCode() {
+        return size * 31 + winExponent;
+    }
+
+    @Override
+    public String toString() {
+        return size + " x " + size + " to " + getWinTile();
+    }
+
+}
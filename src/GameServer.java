@@ -0,0 +1,261 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hosts many games in one JVM over a plain text protocol on a local socket.
+ * Every request is one line, "session command", answered by one line:
+ *
+ *     alice NEW      -> OK 0 0 STARTED 0 2 0 0 ...
+ *     alice LEFT     -> OK 4 0 STARTED 4 0 0 2 ...
+ *     alice CLOSE    -> OK closed
+ *     QUIT           (closes the connection)
+ *
+ * Commands are UP, RIGHT, DOWN, LEFT, UNDO, REDO, NEW, LOAD, STATE, RANK, TOP n
+ * and CLOSE, see GameSession for the reply. A session starts with its first
+ * command and is evicted when idle (see SessionManager). Games are saved in a
+ * SlotStore under the session id, a new session continues one. Best scores go to a
+ * Leaderboard, saved every minute and on exit. Sessions aren't tied to a
+ * connection: a player can reconnect and continue, and one connection can
+ * play any number of sessions, so a front end can multiplex thousands of
+ * players over a few connections.
+ *
+ * Usage: java GameServer [port=2048] [stripes=N] [idleSeconds=600]
+ * [maxSessions=100000] [store=game_sessions.bin|none]
+ * [leaderboard=leaderboard.bin|none]
+ */
+public class GameServer {
+
+    public static final int DEFAULT_PORT = 2048;
+    public static final long LEADERBOARD_SAVE_SECONDS = 60;
+
+    private final SessionManager sessions;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet(); // open connections
+    private final Thread acceptor;
+
+    /**
+     * Listens on the loopback interface, port 0 picks a free port (see
+     * getPort).
+     */
+    public GameServer(SessionManager sessions, int port) throws IOException {
+        this.sessions = sessions;
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+        // A thread per connection, connections are few and long lived
+        connections = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "game-server-connection");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        acceptor = new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "game-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public SessionManager getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Stop taking connections and close the open ones. Sessions are left to the
+     * SessionManager.
+     */
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.out.println("Error: " + e);
+        }
+        // Interrupting doesn't wake a thread reading a socket, closing it does
+        for (Socket client : clients) {
+            clients.remove(client);
+            closeQuietly(client);
+        }
+        connections.shutdownNow();
+    }
+
+    public int getConnectionCount() {
+        return clients.size();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                clients.add(socket);
+                // close may have gone through the clients before this one was added
+                if (serverSocket.isClosed()) {
+                    clients.remove(socket);
+                    closeQuietly(socket);
+                    break;
+                }
+                connections.execute(new Runnable() {
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (SocketException e) {
+                // closed
+            } catch (IOException e) {
+                System.out.println("Error: " + e);
+            } catch (RejectedExecutionException e) {
+                // closed while accepting
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.equalsIgnoreCase("QUIT")) {
+                    break;
+                }
+                out.println(handle(line));
+            }
+        } catch (IOException e) {
+            // Client went away, or the server closed the connection
+        } finally {
+            clients.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.out.println("Error: " + e);
+        }
+    }
+
+    // One request line to its reply
+    private String handle(String line) {
+        String[] parts = line.split("\\s+", 2);
+        if (parts.length != 2) {
+            return "ERR expected: session command";
+        }
+        try {
+            return sessions.submit(parts[0], parts[1]).get();
+        } catch (ExecutionException e) {
+            return "ERR " + e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERR interrupted";
+        } catch (RejectedExecutionException e) {
+            return "ERR server closed";
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = DEFAULT_PORT;
+        int stripes = Runtime.getRuntime().availableProcessors();
+        long idleSeconds = SessionManager.DEFAULT_IDLE_MILLIS / 1000;
+        int maxSessions = SessionManager.DEFAULT_MAX_SESSIONS;
+        String storeFile = SlotStore.DEFAULT_FILE;
+        String leaderboardFile = Leaderboard.DEFAULT_FILE;
+
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            switch (pair[0]) {
+                case "port":
+                    port = Integer.parseInt(pair[1]);
+                    break;
+                case "stripes":
+                    stripes = Integer.parseInt(pair[1]);
+                    break;
+                case "idleSeconds":
+                    idleSeconds = Long.parseLong(pair[1]);
+                    break;
+                case "maxSessions":
+                    maxSessions = Integer.parseInt(pair[1]);
+                    break;
+                case "store":
+                    storeFile = pair[1];
+                    break;
+                case "leaderboard":
+                    leaderboardFile = pair[1];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + pair[0]);
+            }
+        }
+
+        // Mapped writes survive the JVM being killed, no need to close the store
+        SlotStore store = storeFile.equals("none") ? null : new SlotStore(storeFile);
+        Leaderboard leaderboard = leaderboardFile.equals("none") ? null : Leaderboard.load(leaderboardFile);
+        if (leaderboard != null) {
+            saveLeaderboard(leaderboard, leaderboardFile);
+        }
+        GameServer server = new GameServer(
+                new SessionManager(stripes, idleSeconds * 1000, maxSessions, store, leaderboard), port);
+        System.out.println("Listening on localhost:" + server.getPort() + ", " + stripes + " stripes");
+
+        // Serve until killed
+        server.acceptor.join();
+    }
+
+    // Save a snapshot of the leaderboard every minute and on exit
+    private static void saveLeaderboard(final Leaderboard leaderboard, final String fileName) {
+        final Runnable save = new Runnable() {
+            public void run() {
+                try {
+                    leaderboard.save(fileName);
+                } catch (IOException e) {
+                    System.out.println("Error: " + e);
+                }
+            }
+        };
+        ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "game-leaderboard");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        saver.scheduleWithFixedDelay(save, LEADERBOARD_SAVE_SECONDS, LEADERBOARD_SAVE_SECONDS, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(save, "game-leaderboard-shutdown"));
+    }
+
+}
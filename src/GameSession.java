@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * One player's game on a GameServer. Applies a command line such as "UP" or
+ * "UNDO" and answers with the game as it is after it:
+ *
+ *     OK score bestScore state tile tile ... (row by row)
+ *
+ * or "ERR message". Only a short undo history is kept so thousands of
+ * sessions fit in memory.
+ *
+ * With a SlotStore the game and best score are saved under the session id
+ * after every change to the game, and a won or lost game is deleted. A new
+ * session continues the saved game if there is one (after the session was
+ * evicted or the server restarted), LOAD goes back to it. Without a store
+ * nothing is saved.
+ *
+ * With a Leaderboard the best score is submitted under the session id, and
+ * RANK answers "OK rank percentile players" and TOP n "OK id score id score
+ * ..." for the best n.
+ *
+ * Not thread-safe, SessionManager only uses a session from its stripe's thread.
+ */
+public class GameSession {
+
+    // Boards to undo to per session, a GameLogic normally keeps 1024
+    public static final int UNDO_DEPTH = 32;
+
+    private final String id;
+    private final GameLogic logic;
+    private final SlotStore store; // null if nothing is saved
+    private final Leaderboard leaderboard; // null if there is none
+    private volatile long lastUsedNanos;
+
+    /**
+     * Continues the saved game, or starts a new one spawning from the given
+     * seed if there is none.
+     */
+    public GameSession(String id, long seed, SlotStore store, Leaderboard leaderboard) {
+        this.id = id;
+        this.store = store;
+        this.leaderboard = leaderboard;
+        logic = new GameLogic(GameRules.STANDARD, new SplittableRandom(seed), Durability.NONE, UNDO_DEPTH);
+        // Session games aren't replayed, don't let them grow a recording
+        logic.setRecording(false);
+        logic.setLeaderboard(leaderboard, id);
+        if (store != null) {
+            logic.setBestScore(store.getBestScore(id));
+        }
+        if (store != null && store.hasGame(id)) {
+            logic.loadGame(store.getBoard(id), store.getScore(id));
+        } else {
+            logic.newGame();
+        }
+        lastUsedNanos = System.nanoTime();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public GameLogic getLogic() {
+        return logic;
+    }
+
+    // True if no command came in for the given time
+    public boolean isIdle(long now, long idleNanos) {
+        return now - lastUsedNanos >= idleNanos;
+    }
+
+    public String apply(String command) {
+        lastUsedNanos = System.nanoTime();
+
+        long board = logic.getPackedBoard();
+        int score = logic.getScore();
+        GameState state = logic.getGameState();
+
+        String[] words = command.trim().split("\\s+", 2);
+        switch (words[0].toUpperCase()) {
+            case "UP":
+                move(1);
+                break;
+            case "RIGHT":
+                move(2);
+                break;
+            case "DOWN":
+                move(3);
+                break;
+            case "LEFT":
+                move(4);
+                break;
+            case "UNDO":
+                logic.undoMove();
+                break;
+            case "REDO":
+                logic.redoMove();
+                break;
+            case "NEW":
+                // Replaces the saved game even if the board happens to match
+                logic.newGame();
+                save();
+                return reply();
+            case "LOAD":
+                if (store == null || !store.hasGame(id)) {
+                    return "ERR no saved game";
+                }
+                logic.loadGame(store.getBoard(id), store.getScore(id));
+                return reply();
+            case "STATE":
+                return reply();
+            case "RANK":
+                if (leaderboard == null || leaderboard.getRank(id) == 0) {
+                    return "ERR no rank";
+                }
+                return String.format("OK %d %.1f %d", leaderboard.getRank(id), leaderboard.getPercentile(id),
+                        leaderboard.size());
+            case "TOP":
+                return top(words.length > 1 ? words[1] : "10");
+            default:
+                return "ERR unknown command: " + command;
+        }
+        // Moves, undos and redos that changed nothing leave the saved game alone
+        if (logic.getPackedBoard() != board || logic.getScore() != score || logic.getGameState() != state) {
+            save();
+        }
+        return reply();
+    }
+
+    // Only move if game is being played
+    private void move(int direction) {
+        if (logic.getGameState() == GameState.STARTED) {
+            logic.makeMove(direction);
+        }
+    }
+
+    private void save() {
+        if (store == null) {
+            return;
+        }
+        try {
+            if (logic.getGameState() == GameState.STARTED) {
+                store.saveGame(id, logic.getPackedBoard(), logic.getScore(), logic.getBestScore());
+            } else {
+                store.deleteGame(id, logic.getBestScore());
+            }
+        } catch (IOException e) {
+            System.out.println("Error: " + e);
+        }
+    }
+
+    private String top(String count) {
+        if (leaderboard == null) {
+            return "ERR no leaderboard";
+        }
+        int n;
+        try {
+            n = Integer.parseInt(count);
+        } catch (NumberFormatException e) {
+            return "ERR not a number: " + count;
+        }
+        StringBuilder out = new StringBuilder("OK");
+        for (Leaderboard.Entry entry : leaderboard.getTop(Math.min(n, 100))) {
+            out.append(' ').append(entry.player).append(' ').append(entry.score);
+        }
+        return out.toString();
+    }
+
+    private String reply() {
+        BoardSnapshot snapshot = logic.getSnapshot();
+        StringBuilder out = new StringBuilder("OK ");
+        out.append(snapshot.getScore()).append(' ').append(snapshot.getBestScore()).append(' ')
+                .append(snapshot.getGameState());
+        int size = snapshot.getSize();
+        for (int i = 0; i < size * size; i++) {
+            out.append(' ').append(Bitboard.toValue(snapshot.getExponent(i)));
+        }
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,220 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BiFunction;
+
+/**
+ * Best score of every player (a GameServer session, or any name), fed by
+ * GameLogic.updateBestScore, with rank, percentile and top N queries.
+ *
+ * Every query is cheap whatever the number of players: players are kept
+ * sorted in a skip list for the top N, and counted per score in a Fenwick
+ * tree for rank and percentile, so both take about 20 array reads. Scores
+ * share a count per 4 points (every merge scores a multiple of 4), scores
+ * above MAX_SCORE count as MAX_SCORE.
+ *
+ * Thread-safe. A player's best score changes under the player's lock in a
+ * ConcurrentHashMap, so games ending at once only wait on each other if they
+ * hash to the same bin. Queries never lock, they may miss an update being made
+ * meanwhile.
+ */
+public class Leaderboard {
+
+    public static final String DEFAULT_FILE = "leaderboard.bin";
+
+    // Beyond any 4 x 4 game (its largest tile is 32768)
+    public static final int MAX_SCORE = 4 << 20;
+
+    private static final int MAGIC = 0x4C425244; // "LBRD"
+    private static final int VERSION = 1;
+    private static final int BUCKETS = MAX_SCORE / 4 + 1;
+
+    // One player's best score, ordered highest first, then by name
+    public static final class Entry {
+        public final String player;
+        public final int score;
+
+        public Entry(String player, int score) {
+            this.player = player;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            return player + " " + score;
+        }
+    }
+
+    private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+        public int compare(Entry a, Entry b) {
+            if (a.score != b.score) {
+                return Integer.compare(b.score, a.score);
+            }
+            return a.player.compareTo(b.player);
+        }
+    };
+
+    private final ConcurrentMap<String, Entry> players = new ConcurrentHashMap<String, Entry>();
+    private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<Entry>(ORDER);
+
+    // Fenwick tree of players per score bucket, index 1 - BUCKETS
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(BUCKETS + 1);
+
+    // UPDATES ==================================================================
+
+    /**
+     * Records a score for the player. True if it is their new best, lower
+     * scores are ignored.
+     */
+    public boolean submit(String player, final int score) {
+        final boolean[] improved = new boolean[1];
+        players.compute(player, new BiFunction<String, Entry, Entry>() {
+            public Entry apply(String name, Entry old) {
+                if (old != null && old.score >= score) {
+                    return old;
+                }
+                Entry entry = new Entry(name, score);
+                if (old != null) {
+                    ranking.remove(old);
+                    add(bucket(old.score), -1);
+                }
+                ranking.add(entry);
+                add(bucket(score), 1);
+                improved[0] = true;
+                return entry;
+            }
+        });
+        return improved[0];
+    }
+
+    private static int bucket(int score) {
+        return Math.min(Math.max(score, 0), MAX_SCORE) / 4 + 1;
+    }
+
+    private void add(int bucket, int delta) {
+        for (int i = bucket; i <= BUCKETS; i += i & -i) {
+            counts.addAndGet(i, delta);
+        }
+    }
+
+    // Players with a score in buckets 1 - bucket
+    private int countUpTo(int bucket) {
+        int count = 0;
+        for (int i = bucket; i > 0; i -= i & -i) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    // QUERIES ==================================================================
+
+    public int size() {
+        return players.size();
+    }
+
+    // -1 if the player has no score
+    public int getBestScore(String player) {
+        Entry entry = players.get(player);
+        return entry == null ? -1 : entry.score;
+    }
+
+    // 1 for the best score, players with the same score share a rank
+    public int getRankOfScore(int score) {
+        return 1 + countUpTo(BUCKETS) - countUpTo(bucket(score));
+    }
+
+    // 0 if the player has no score
+    public int getRank(String player) {
+        Entry entry = players.get(player);
+        return entry == null ? 0 : getRankOfScore(entry.score);
+    }
+
+    // Percentage of players with a lower score (0 - 100)
+    public double getPercentileOfScore(int score) {
+        int total = countUpTo(BUCKETS);
+        return total == 0 ? 0 : 100.0 * countUpTo(bucket(score) - 1) / total;
+    }
+
+    // 0 if the player has no score
+    public double getPercentile(String player) {
+        Entry entry = players.get(player);
+        return entry == null ? 0 : getPercentileOfScore(entry.score);
+    }
+
+    // Best n players, highest first
+    public List<Entry> getTop(int n) {
+        List<Entry> top = new ArrayList<Entry>(Math.min(n, 1024));
+        Iterator<Entry> entries = ranking.iterator();
+        while (top.size() < n && entries.hasNext()) {
+            top.add(entries.next());
+        }
+        return top;
+    }
+
+    // FILE I/O =================================================================
+
+    /**
+     * Writes every player's best score, replacing the file only once the new
+     * one is complete. Scores submitted meanwhile may or may not be included.
+     */
+    public void save(String fileName) throws IOException {
+        Path path = Paths.get(fileName);
+        Path temp = Paths.get(fileName + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp.toFile())));
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            List<Entry> entries = new ArrayList<Entry>(ranking);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.player);
+                out.writeInt(entry.score);
+            }
+        } finally {
+            out.close();
+        }
+
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Leaderboard saved by save, empty if there is no such file
+    public static Leaderboard load(String fileName) throws IOException {
+        Leaderboard leaderboard = new Leaderboard();
+        if (!Files.exists(Paths.get(fileName))) {
+            return leaderboard;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+        try {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Not a leaderboard: " + fileName);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String player = in.readUTF();
+                leaderboard.submit(player, in.readInt());
+            }
+        } finally {
+            in.close();
+        }
+        return leaderboard;
+    }
+
+}
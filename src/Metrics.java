@@ -0,0 +1,177 @@
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts and times of the game's hot paths and file I/O, off unless the JVM
+ * is started with -Dgame.metrics=true. Then every timer is registered as an
+ * MXBean under "game2048:type=Metrics" (see jconsole) and dump() is printed
+ * when the JVM exits.
+ *
+ * ENABLED is a constant, so when it is false the JIT drops the timing calls
+ * altogether and they can stay in the hot path:
+ *
+ *     long start = Metrics.start();
+ *     ...
+ *     Metrics.MOVE_TILES.stop(start);
+ */
+public final class Metrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("game.metrics");
+
+    // GameLogic
+    public static final Timer MAKE_MOVE = new Timer("makeMove");
+    public static final Timer MOVE_TILES = new Timer("moveTiles");
+    public static final Timer ADD_TILE = new Timer("addTile");
+    public static final Timer CHECK_LOSS = new Timer("checkLoss");
+    public static final Timer UNDO_MOVE = new Timer("undoMove");
+    public static final Timer REDO_MOVE = new Timer("redoMove");
+
+    // File I/O. The writes only queue work unless the durability is FSYNC,
+    // flush is where it reaches the disk
+    public static final Timer WRITE_SNAPSHOT = new Timer("writeSnapshot");
+    public static final Timer WRITE_JOURNAL = new Timer("writeJournal");
+    public static final Timer LOAD_GAME = new Timer("loadGame");
+    public static final Timer READ_FILE = new Timer("readFileAndSet");
+    public static final Timer WRITE_STATS = new Timer("writeGameStatsFile");
+    public static final Timer DELETE_FILE = new Timer("deleteFile");
+    public static final Timer FLUSH = new Timer("flush");
+
+    private static final Timer[] TIMERS = { MAKE_MOVE, MOVE_TILES, ADD_TILE, CHECK_LOSS, UNDO_MOVE, REDO_MOVE,
+        WRITE_SNAPSHOT, WRITE_JOURNAL, LOAD_GAME, READ_FILE, WRITE_STATS, DELETE_FILE, FLUSH };
+
+    static {
+        if (ENABLED) {
+            register();
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                public void run() {
+                    System.out.print(dump());
+                }
+            }, "game-metrics-shutdown"));
+        }
+    }
+
+    private Metrics() {
+    }
+
+    // Start time to pass to Timer.stop, 0 when disabled
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    public static Timer[] getTimers() {
+        return TIMERS.clone();
+    }
+
+    // One line per timer, times in nanoseconds
+    public static String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-20s %12s %12s %12s %12s %12s %12s%n", "Operation", "Count", "Mean ns",
+                "p50 ns", "p99 ns", "p99.9 ns", "Max ns"));
+        for (Timer timer : TIMERS) {
+            out.append(String.format("%-20s %12d %12.1f %12d %12d %12d %12d%n", timer.getName(), timer.getCount(),
+                    timer.getMeanNanos(), timer.getP50Nanos(), timer.getP99Nanos(), timer.getP999Nanos(),
+                    timer.getMaxNanos()));
+        }
+        return out.toString();
+    }
+
+    public static void reset() {
+        for (Timer timer : TIMERS) {
+            timer.reset();
+        }
+    }
+
+    private static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Timer timer : TIMERS) {
+            try {
+                server.registerMBean(timer, new ObjectName("game2048:type=Metrics,name=" + timer.getName()));
+            } catch (JMException e) {
+                System.out.println("Error: " + e);
+            }
+        }
+    }
+
+    // TIMERS ===================================================================
+
+    // What a timer shows over JMX
+    public interface TimerMXBean {
+
+        String getName();
+
+        long getCount();
+
+        double getMeanNanos();
+
+        long getP50Nanos();
+
+        long getP99Nanos();
+
+        long getP999Nanos();
+
+        long getMaxNanos();
+
+        void reset();
+
+    }
+
+    // Count and latency histogram of one operation, safe to stop from any thread
+    public static final class Timer implements TimerMXBean {
+
+        private final String name;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        // Record the time since start, if enabled
+        public void stop(long start) {
+            if (ENABLED) {
+                histogram.record(System.nanoTime() - start);
+            }
+        }
+
+        // Record a duration whether enabled or not, for tests
+        void record(long nanos) {
+            histogram.record(nanos);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        public double getMeanNanos() {
+            return histogram.getMeanNanos();
+        }
+
+        public long getP50Nanos() {
+            return histogram.getPercentile(50);
+        }
+
+        public long getP99Nanos() {
+            return histogram.getPercentile(99);
+        }
+
+        public long getP999Nanos() {
+            return histogram.getPercentile(99.9);
+        }
+
+        public long getMaxNanos() {
+            return histogram.getMaxNanos();
+        }
+
+        public void reset() {
+            histogram.reset();
+        }
+
+    }
+
+}
@@ -0,0 +1,266 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only binary save file for a game in progress.
+ *
+ * The file starts with a snapshot: the board size and winning tile, the game
+ * seed, the state of the spawn generator, the board, the score and the undo
+ * history. After it comes one
+ * byte per event, a direction (1 - 4) for every valid move, UNDO or REDO. Loading
+ * the game replays the events on top of the snapshot, and because tiles spawn
+ * from the saved generator state this gives back exactly the same game.
+ *
+ * A move costs a single byte appended to an open channel. Now and then the
+ * caller writes a new snapshot, which goes to a temporary file that is then
+ * moved over the journal, so a crash leaves either the old or the new file
+ * complete.
+ */
+public class MoveJournal implements Closeable {
+
+    public static final String DEFAULT_FILE = "game_journal.bin";
+
+    // Records for a successful undo and redo, directions are 1 - 4
+    public static final int UNDO = 5;
+    public static final int REDO = 6;
+
+    // "2048" in ASCII
+    private static final int MAGIC = 0x32303438;
+    // Version 3 added board sizes and the winning tile
+    private static final int VERSION = 3;
+
+    private final Path path;
+    private final ByteBuffer record = ByteBuffer.allocate(1);
+    private FileChannel channel;
+
+    /**
+     * State of a game at the start of the journal. Boards are stored as
+     * exponents, one byte per tile row by row (see FlatBoard), whatever the size.
+     */
+    public static final class Snapshot {
+        public final int size;
+        public final int winExponent;
+        public final long seed;
+        public final long randomState;
+        public final byte[] board;
+        public final int score;
+        // Undo history oldest first, historyScores.length boards back to back.
+        // The last historyRedo entries can be redone
+        public final byte[] historyBoards;
+        public final int[] historyScores;
+        public final int historyRedo;
+
+        public Snapshot(int size, int winExponent, long seed, long randomState, byte[] board, int score,
+                byte[] historyBoards, int[] historyScores, int historyRedo) {
+            this.size = size;
+            this.winExponent = winExponent;
+            this.seed = seed;
+            this.randomState = randomState;
+            this.board = board;
+            this.score = score;
+            this.historyBoards = historyBoards;
+            this.historyScores = historyScores;
+            this.historyRedo = historyRedo;
+        }
+    }
+
+    /**
+     * Snapshot and events read back from a journal file.
+     */
+    public static final class Contents {
+        public final Snapshot snapshot;
+        public final byte[] events;
+
+        Contents(Snapshot snapshot, byte[] events) {
+            this.snapshot = snapshot;
+            this.events = events;
+        }
+    }
+
+    public MoveJournal(String fileName) {
+        this.path = Paths.get(fileName);
+    }
+
+    // WRITING ================================================================
+
+    /**
+     * Replaces the journal with a snapshot and no events, then keeps the file
+     * open for appending. With force the snapshot is on disk before it replaces
+     * the old journal.
+     */
+    public void writeSnapshot(Snapshot snapshot, boolean force) throws IOException {
+        close();
+
+        Path temp = Paths.get(path.toString() + ".tmp");
+        FileOutputStream file = null;
+        DataOutputStream out = null;
+        try {
+            file = new FileOutputStream(temp.toFile());
+            out = new DataOutputStream(new BufferedOutputStream(file));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(snapshot.size);
+            out.writeByte(snapshot.winExponent);
+            out.writeLong(snapshot.seed);
+            out.writeLong(snapshot.randomState);
+            out.write(snapshot.board);
+            out.writeInt(snapshot.score);
+            out.writeInt(snapshot.historyScores.length);
+            out.writeInt(snapshot.historyRedo);
+            out.write(snapshot.historyBoards, 0, snapshot.historyScores.length * snapshot.board.length);
+            for (int historyScore : snapshot.historyScores) {
+                out.writeInt(historyScore);
+            }
+            out.flush();
+            if (force) {
+                file.getFD().sync();
+            }
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Append one event, a direction or UNDO
+    public void append(int event) throws IOException {
+        if (channel == null) {
+            throw new IOException("Journal has no snapshot yet: " + path);
+        }
+        record.clear();
+        record.put((byte) event);
+        record.flip();
+        channel.write(record);
+    }
+
+    // Append several events with a single write
+    public void append(byte[] events, int length) throws IOException {
+        if (channel == null) {
+            throw new IOException("Journal has no snapshot yet: " + path);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(events, 0, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Force everything appended so far to disk
+    public void sync() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    public boolean isOpen() {
+        return channel != null;
+    }
+
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // Close and remove the journal, when the game is over
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    // READING ================================================================
+
+    /**
+     * Reads the snapshot and every complete event in the journal.
+     */
+    public Contents read() throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        try {
+            int version = in.readInt() == MAGIC ? in.readByte() : -1;
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Not a game journal: " + path);
+            }
+
+            Snapshot snapshot = version == VERSION ? readSnapshot(in) : readPackedSnapshot(in, version);
+
+            // Everything after the snapshot is one byte per event
+            byte[] events = new byte[in.available()];
+            in.readFully(events);
+
+            return new Contents(snapshot, events);
+        } catch (EOFException e) {
+            throw new IOException("Journal snapshot is incomplete: " + path, e);
+        }
+    }
+
+    private Snapshot readSnapshot(DataInputStream in) throws IOException {
+        int size = in.readByte();
+        int winExponent = in.readByte();
+        long seed = in.readLong();
+        long randomState = in.readLong();
+        byte[] board = new byte[size * size];
+        in.readFully(board);
+        int score = in.readInt();
+
+        int historySize = in.readInt();
+        int historyRedo = in.readInt();
+        byte[] historyBoards = new byte[historySize * board.length];
+        in.readFully(historyBoards);
+        int[] historyScores = new int[historySize];
+        for (int i = 0; i < historySize; i++) {
+            historyScores[i] = in.readInt();
+        }
+
+        return new Snapshot(size, winExponent, seed, randomState, board, score, historyBoards,
+                historyScores, historyRedo);
+    }
+
+    /*
+     * Versions 1 and 2 only had standard games, with packed boards. Version 1
+     * stored the history most recent first and had no redo entries.
+     */
+    private Snapshot readPackedSnapshot(DataInputStream in, int version) throws IOException {
+        long seed = in.readLong();
+        long randomState = in.readLong();
+        byte[] board = new byte[Bitboard.CELLS];
+        Bitboard.toExponents(in.readLong(), board, 0);
+        int score = in.readInt();
+
+        int historySize = in.readInt();
+        int historyRedo = version == 1 ? 0 : in.readInt();
+        byte[] historyBoards = new byte[historySize * Bitboard.CELLS];
+        int[] historyScores = new int[historySize];
+        for (int i = 0; i < historySize; i++) {
+            int index = version == 1 ? historySize - 1 - i : i;
+            Bitboard.toExponents(in.readLong(), historyBoards, index * Bitboard.CELLS);
+            historyScores[index] = in.readInt();
+        }
+
+        return new Snapshot(GameRules.STANDARD.getSize(), GameRules.STANDARD.getWinExponent(), seed,
+                randomState, board, score, historyBoards, historyScores, historyRedo);
+    }
+
+}
@@ -0,0 +1,293 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves a game (its MoveJournal and best score) without blocking the thread
+ * that makes the moves, how safely depends on the Durability mode.
+ *
+ * NONE drops everything. FSYNC writes every request right away and forces it
+ * to disk before returning. ASYNC only records what has to be written:
+ * a new snapshot replaces any snapshot and events still pending, events are
+ * batched into a single append and only the latest best score is kept. One
+ * shared background thread writes the pending work of every writer once per
+ * flush interval, and a shutdown hook flushes whatever is left when the JVM
+ * exits.
+ */
+public class PersistenceWriter {
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+
+    // Events after a snapshot before GameLogic should write a new one
+    private static final int COMPACT_EVERY = 256;
+
+    private static final ScheduledExecutorService FLUSHER = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "game-persistence");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // Writers with pending work, flushed on exit
+    private static final Set<PersistenceWriter> OPEN = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                for (PersistenceWriter writer : OPEN) {
+                    writer.flush();
+                }
+            }
+        }, "game-persistence-shutdown"));
+    }
+
+    private final MoveJournal journal;
+    private final String statsFile;
+    private final Durability durability;
+    private final long flushIntervalMillis;
+
+    // Only touched by the thread making moves
+    private boolean hasSnapshot;
+    private int eventsSinceSnapshot;
+
+    // Pending work, guarded by this
+    private MoveJournal.Snapshot pendingSnapshot;
+    private byte[] pendingEvents = new byte[64];
+    private int pendingCount;
+    private boolean pendingDelete;
+    private int pendingBestScore = -1;
+    private boolean flushScheduled;
+
+    // Held while writing so flushes from different threads don't interleave
+    private final Object writeLock = new Object();
+    private byte[] writingEvents = new byte[64];
+
+    public PersistenceWriter(String journalFile, String statsFile, Durability durability,
+            long flushIntervalMillis) {
+        this.journal = new MoveJournal(journalFile);
+        this.statsFile = statsFile;
+        this.durability = durability;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    // REQUESTS ===============================================================
+
+    public boolean isEnabled() {
+        return durability != Durability.NONE;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    // True if the game has a snapshot that events can be appended to
+    public boolean hasSnapshot() {
+        return hasSnapshot;
+    }
+
+    // True once enough events were appended that a new snapshot should be written
+    public boolean needsCompaction() {
+        return eventsSinceSnapshot >= COMPACT_EVERY;
+    }
+
+    public void saveSnapshot(MoveJournal.Snapshot snapshot) {
+        if (!isEnabled()) {
+            return;
+        }
+        hasSnapshot = true;
+        eventsSinceSnapshot = 0;
+
+        synchronized (this) {
+            // Replaces everything pending, the snapshot already includes it
+            pendingSnapshot = snapshot;
+            pendingCount = 0;
+            pendingDelete = false;
+        }
+        requestWrite();
+    }
+
+    public void appendEvent(int event) {
+        if (!isEnabled()) {
+            return;
+        }
+        eventsSinceSnapshot++;
+
+        synchronized (this) {
+            if (pendingCount == pendingEvents.length) {
+                byte[] larger = new byte[pendingEvents.length * 2];
+                System.arraycopy(pendingEvents, 0, larger, 0, pendingCount);
+                pendingEvents = larger;
+            }
+            pendingEvents[pendingCount++] = (byte) event;
+        }
+        requestWrite();
+    }
+
+    // Game is over, remove its journal
+    public void deleteGame() {
+        if (!isEnabled()) {
+            return;
+        }
+        hasSnapshot = false;
+        eventsSinceSnapshot = 0;
+
+        synchronized (this) {
+            pendingSnapshot = null;
+            pendingCount = 0;
+            pendingDelete = true;
+        }
+        requestWrite();
+    }
+
+    public void saveBestScore(int bestScore) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            pendingBestScore = bestScore;
+        }
+        requestWrite();
+    }
+
+    // FSYNC writes now, ASYNC makes sure a flush is coming
+    private void requestWrite() {
+        if (durability == Durability.FSYNC) {
+            flush();
+            return;
+        }
+
+        synchronized (this) {
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        OPEN.add(this);
+        FLUSHER.schedule(new Runnable() {
+            public void run() {
+                flush();
+            }
+        }, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // WRITING ================================================================
+
+    /**
+     * Writes everything pending on the calling thread.
+     */
+    public void flush() {
+        long start = Metrics.start();
+        synchronized (writeLock) {
+            MoveJournal.Snapshot snapshot;
+            int eventCount;
+            boolean delete;
+            int bestScore;
+
+            synchronized (this) {
+                snapshot = pendingSnapshot;
+                delete = pendingDelete;
+                bestScore = pendingBestScore;
+
+                // Swap buffers so new events can be queued while writing
+                byte[] events = pendingEvents;
+                pendingEvents = writingEvents;
+                writingEvents = events;
+                eventCount = pendingCount;
+
+                pendingSnapshot = null;
+                pendingCount = 0;
+                pendingDelete = false;
+                pendingBestScore = -1;
+                flushScheduled = false;
+            }
+            OPEN.remove(this);
+
+            boolean force = durability == Durability.FSYNC;
+            try {
+                if (delete) {
+                    journal.delete();
+                }
+                if (snapshot != null) {
+                    journal.writeSnapshot(snapshot, force);
+                }
+                if (eventCount > 0) {
+                    journal.append(writingEvents, eventCount);
+                    if (force) {
+                        journal.sync();
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("Error: " + e);
+            }
+
+            if (bestScore >= 0) {
+                writeStatsFile(bestScore);
+            }
+        }
+        Metrics.FLUSH.stop(start);
+    }
+
+    // Flush and release the journal
+    public void close() {
+        flush();
+        synchronized (writeLock) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.out.println("Error: " + e);
+            }
+        }
+    }
+
+    // Flushes first so the journal on disk is up to date
+    public MoveJournal.Contents readJournal() throws IOException {
+        flush();
+        synchronized (writeLock) {
+            return journal.read();
+        }
+    }
+
+    // Flushes first so a pending snapshot or delete counts
+    public boolean journalExists() {
+        flush();
+        synchronized (writeLock) {
+            return journal.exists();
+        }
+    }
+
+    private void writeStatsFile(int bestScore) {
+        BufferedWriter bw = null;
+
+        try {
+            bw = new BufferedWriter(new FileWriter(new File(statsFile)));
+
+            // Store score
+            bw.write(String.valueOf(bestScore));
+            bw.newLine();
+            bw.flush();
+
+        } catch (IOException e) {
+            System.out.println("Error: " + e);
+
+            // Close file
+        } finally {
+            try {
+                if (bw != null) {
+                    bw.close();
+                }
+            } catch (Exception ex) {
+                System.out.println("Can't close BufferedWriter: " + ex);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the GameSessions of a GameServer by session id and runs their
+ * commands. A session is created by its first command and evicted once idle
+ * for longer than the idle timeout, or by CLOSE.
+ *
+ * Commands run on a fixed set of single threaded stripes, a session always on
+ * the same one (by id hash). So a session's commands apply one at a time in
+ * the order they came in, sessions need no locks and thousands of them share
+ * a few threads. Creating, closing and evicting a session also happen on its
+ * stripe, so they never race with its commands.
+ */
+public class SessionManager {
+
+    public static final long DEFAULT_IDLE_MILLIS = 10 * 60 * 1000;
+    public static final int DEFAULT_MAX_SESSIONS = 100_000;
+
+    private final ConcurrentMap<String, GameSession> sessions = new ConcurrentHashMap<String, GameSession>();
+    // Sessions created and not yet removed, reserved before creating so the
+    // stripes together never go over maxSessions
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final SlotStore store;
+    private final Leaderboard leaderboard;
+    private final ExecutorService[] stripes;
+    private final ScheduledExecutorService evictor;
+    private final long idleNanos;
+    private final int maxSessions;
+
+    public SessionManager(int stripeCount, long idleMillis, int maxSessions) {
+        this(stripeCount, idleMillis, maxSessions, null, null);
+    }
+
+    /**
+     * Saves every session's game in the store and submits its best scores to
+     * the leaderboard under its id, see GameSession. Either can be null. The
+     * store is left open by close.
+     */
+    public SessionManager(int stripeCount, long idleMillis, int maxSessions, SlotStore store,
+            Leaderboard leaderboard) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("Need at least 1 stripe: " + stripeCount);
+        }
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.maxSessions = maxSessions;
+        this.store = store;
+        this.leaderboard = leaderboard;
+
+        stripes = new ExecutorService[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = Executors.newSingleThreadExecutor(daemon("game-session-" + i));
+        }
+
+        // Look for idle sessions a few times per timeout
+        long sweepMillis = Math.max(1, idleMillis / 4);
+        evictor = Executors.newSingleThreadScheduledExecutor(daemon("game-session-evictor"));
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                evictIdle();
+            }
+        }, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    // COMMANDS =================================================================
+
+    /**
+     * Runs a command for the session with the given id on its stripe, see
+     * GameSession for commands and replies. CLOSE ends the session.
+     */
+    public Future<String> submit(final String id, final String command) {
+        return stripe(id).submit(new Callable<String>() {
+            public String call() {
+                return apply(id, command);
+            }
+        });
+    }
+
+    private ExecutorService stripe(String id) {
+        return stripes[(id.hashCode() & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    // On the session's stripe
+    private String apply(String id, String command) {
+        GameSession session = sessions.get(id);
+        if (command.equalsIgnoreCase("CLOSE")) {
+            if (sessions.remove(id) == null) {
+                return "ERR no session: " + id;
+            }
+            sessionCount.decrementAndGet();
+            return "OK closed";
+        }
+
+        if (session == null) {
+            // Ids are the keys of saved games
+            if (id.getBytes(StandardCharsets.UTF_8).length > SlotStore.MAX_KEY_BYTES) {
+                return "ERR session id longer than " + SlotStore.MAX_KEY_BYTES + " bytes";
+            }
+            if (!reserve()) {
+                return "ERR too many sessions";
+            }
+            try {
+                session = new GameSession(id, ThreadLocalRandom.current().nextLong(), store, leaderboard);
+            } catch (RuntimeException e) {
+                sessionCount.decrementAndGet();
+                throw e;
+            }
+            sessions.put(id, session);
+        }
+        return session.apply(command);
+    }
+
+    // Take one of the maxSessions, false if all are taken
+    private boolean reserve() {
+        while (true) {
+            int count = sessionCount.get();
+            if (count >= maxSessions) {
+                return false;
+            }
+            if (sessionCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // EVICTION =================================================================
+
+    // On the evictor thread, hand every idle session to its stripe to remove
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (final GameSession session : sessions.values()) {
+            if (session.isIdle(now, idleNanos)) {
+                stripe(session.getId()).execute(new Runnable() {
+                    public void run() {
+                        // A command may have come in since
+                        if (session.isIdle(System.nanoTime(), idleNanos)
+                                && sessions.remove(session.getId(), session)) {
+                            sessionCount.decrementAndGet();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public void close() {
+        evictor.shutdownNow();
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+
+}
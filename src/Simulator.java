@@ -0,0 +1,267 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless batch simulator. Plays many games straight on the packed board with
+ * no Swing and no file I/O, spread over a pool of threads, then reports
+ * throughput, the distribution of final scores and a histogram of the largest
+ * tile reached.
+ *
+ * Every game gets its own SplittableRandom, split off a master generator in
+ * game order before any thread starts, so a run with the same seed plays the
+ * same games no matter how many threads it uses.
+ *
+ * Usage: java Simulator [games=N] [policy=random|greedy|ai] [threads=N]
+ * [seed=N] [budget=ms]
+ */
+public class Simulator {
+
+    // Same as tileProbability in GameLogic
+    private static final double TWO_PROBABILITY = 0.9;
+
+    public enum Policy {
+        RANDOM, // any direction that changes the board
+        GREEDY, // direction with the highest immediate score, then most empty tiles
+        AI // Solver's best move
+    }
+
+    private final Policy policy;
+    private final int threads;
+    private final long seed;
+    private final long aiBudgetMillis;
+
+    // Results of the last run, indexed by game
+    private int[] scores;
+    private int[] maxExponents;
+    private long totalMoves;
+    private long elapsedNanos;
+
+    public Simulator(Policy policy, int threads, long seed, long aiBudgetMillis) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least 1 thread: " + threads);
+        }
+        this.policy = policy;
+        this.threads = threads;
+        this.seed = seed;
+        this.aiBudgetMillis = aiBudgetMillis;
+    }
+
+    // RUNNING GAMES ==========================================================
+
+    /**
+     * Plays the given number of games and keeps their results for the report.
+     */
+    public void run(int games) throws Exception {
+        scores = new int[games];
+        maxExponents = new int[games];
+
+        // One generator per game, split in game order so runs are reproducible
+        final SplittableRandom[] generators = new SplittableRandom[games];
+        SplittableRandom master = new SplittableRandom(seed);
+        for (int i = 0; i < games; i++) {
+            generators[i] = master.split();
+        }
+
+        final AtomicInteger nextGame = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+
+        try {
+            Future<?>[] workers = new Future<?>[threads];
+            final long[] moves = new long[threads];
+            for (int t = 0; t < threads; t++) {
+                final int worker = t;
+                workers[t] = executor.submit(new Runnable() {
+                    public void run() {
+                        // Solver isn't thread-safe, each worker gets its own
+                        Solver solver = policy == Policy.AI
+                                ? new Solver(Solver.DEFAULT_TABLE_BITS, aiBudgetMillis) : null;
+                        int game;
+                        while ((game = nextGame.getAndIncrement()) < generators.length) {
+                            moves[worker] += playGame(game, generators[game], solver);
+                            generators[game] = null;
+                        }
+                    }
+                });
+            }
+
+            totalMoves = 0;
+            for (int t = 0; t < threads; t++) {
+                workers[t].get();
+                totalMoves += moves[t];
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    // Play one game to the end, return number of moves made
+    private long playGame(int game, SplittableRandom rng, Solver solver) {
+        long board = Bitboard.spawnRandom(Bitboard.spawnRandom(0, rng, TWO_PROBABILITY), rng,
+                TWO_PROBABILITY);
+        int score = 0;
+        long moves = 0;
+
+        while (true) {
+            int direction = chooseMove(board, rng, solver);
+            if (direction == 0) {
+                break;
+            }
+            score += Bitboard.score(board, direction);
+            board = Bitboard.spawnRandom(Bitboard.move(board, direction), rng, TWO_PROBABILITY);
+            moves++;
+        }
+
+        scores[game] = score;
+        maxExponents[game] = Bitboard.maxExponent(board);
+        return moves;
+    }
+
+    // Direction picked by the policy, 0 if no direction changes the board
+    private int chooseMove(long board, SplittableRandom rng, Solver solver) {
+        switch (policy) {
+            case AI:
+                return solver.bestMove(board);
+            case GREEDY:
+                return greedyMove(board);
+            default:
+                return randomMove(board, rng);
+        }
+    }
+
+    private static int randomMove(long board, SplittableRandom rng) {
+        int legal = Bitboard.legalMoves(board);
+        if (legal == 0) {
+            return 0;
+        }
+
+        // Drop a random number of the lowest legal directions
+        for (int skip = rng.nextInt(Integer.bitCount(legal)); skip > 0; skip--) {
+            legal &= legal - 1;
+        }
+        return Integer.numberOfTrailingZeros(legal);
+    }
+
+    private static int greedyMove(long board) {
+        int best = 0;
+        int bestScore = -1;
+        int bestEmpty = -1;
+        for (int direction = 1; direction <= 4; direction++) {
+            long moved = Bitboard.move(board, direction);
+            if (moved == board) {
+                continue;
+            }
+            int score = Bitboard.score(board, direction);
+            int empty = Bitboard.emptyCount(moved);
+            if (score > bestScore || (score == bestScore && empty > bestEmpty)) {
+                best = direction;
+                bestScore = score;
+                bestEmpty = empty;
+            }
+        }
+        return best;
+    }
+
+    // REPORT =================================================================
+
+    public int[] getScores() {
+        return scores;
+    }
+
+    public long getTotalMoves() {
+        return totalMoves;
+    }
+
+    // Number of games whose largest tile was 2^exponent, indexed by exponent
+    public int[] maxTileHistogram() {
+        int[] histogram = new int[Bitboard.MAX_EXPONENT + 1];
+        for (int exponent : maxExponents) {
+            histogram[exponent]++;
+        }
+        return histogram;
+    }
+
+    public String report() {
+        double seconds = elapsedNanos / 1e9;
+        int[] sorted = scores.clone();
+        Arrays.sort(sorted);
+
+        long sum = 0;
+        for (int score : sorted) {
+            sum += score;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d games, policy %s, %d threads, seed %d%n",
+                sorted.length, policy, threads, seed));
+        sb.append(String.format("%.2f s, %.1f games/sec, %.1f moves/sec%n",
+                seconds, sorted.length / seconds, totalMoves / seconds));
+
+        if (sorted.length > 0) {
+            sb.append(String.format("Score: min %d, mean %.1f, p50 %d, p90 %d, p99 %d, max %d%n",
+                    sorted[0], (double) sum / sorted.length, percentile(sorted, 50),
+                    percentile(sorted, 90), percentile(sorted, 99), sorted[sorted.length - 1]));
+        }
+
+        sb.append(String.format("Max tile:%n"));
+        int[] histogram = maxTileHistogram();
+        for (int exponent = 1; exponent < histogram.length; exponent++) {
+            if (histogram[exponent] > 0) {
+                sb.append(String.format("  %6d: %d (%.1f%%)%n", 1 << exponent, histogram[exponent],
+                        100.0 * histogram[exponent] / sorted.length));
+            }
+        }
+        return sb.toString();
+    }
+
+    // Nearest-rank percentile of a sorted array
+    private static int percentile(int[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = 1000;
+        Policy policy = Policy.RANDOM;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        long budget = 5;
+
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            switch (pair[0]) {
+                case "games":
+                    games = Integer.parseInt(pair[1]);
+                    break;
+                case "policy":
+                    policy = Policy.valueOf(pair[1].toUpperCase());
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(pair[1]);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(pair[1]);
+                    break;
+                case "budget":
+                    budget = Long.parseLong(pair[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + pair[0]);
+            }
+        }
+
+        Simulator simulator = new Simulator(policy, threads, seed, budget);
+        simulator.run(games);
+        System.out.print(simulator.report());
+    }
+
+}
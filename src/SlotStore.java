@@ -0,0 +1,277 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Saved games and best scores of many players (see GameSession) in one
+ * memory-mapped file, one fixed size slot per player key. Saving is a few
+ * writes into the mapping and loading a few reads, found through an index
+ * rebuilt from the file when it is opened. No text, no file per game. Only
+ * standard 4 x 4 games, the board is stored packed (see Bitboard).
+ *
+ * File layout, big endian:
+ *
+ *     header: int magic, int version, int slot size, int unused
+ *     slot:   byte flags, byte key length, 64 bytes key (UTF-8), 6 unused,
+ *             long board, int score, int best score, 8 unused
+ *
+ * The file grows, doubling, when every slot is taken. Writes reach the file
+ * when the OS writes the pages back (a crashed JVM loses nothing, a crashed
+ * machine may); sync forces them.
+ *
+ * Any number of threads can use a store, but each key by one thread at a time.
+ */
+public class SlotStore implements Closeable {
+
+    public static final String DEFAULT_FILE = "game_sessions.bin";
+    public static final int MAX_KEY_BYTES = 64;
+
+    private static final int MAGIC = 0x32303438; // "2048"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int SLOT_BYTES = 96;
+    private static final int INITIAL_SLOTS = 1024;
+
+    // Slot fields
+    private static final int FLAGS = 0;
+    private static final int KEY_LENGTH = 1;
+    private static final int KEY = 2;
+    private static final int BOARD = 72;
+    private static final int SCORE = 80;
+    private static final int BEST_SCORE = 84;
+
+    private static final int USED = 1;
+    private static final int HAS_GAME = 2;
+
+    private final FileChannel channel;
+    private final ConcurrentMap<String, Integer> index = new ConcurrentHashMap<String, Integer>();
+
+    // Slot reads and writes hold the read lock, growing the mapping the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private MappedByteBuffer map;
+    private int capacity;
+
+    // Guarded by freeSlots
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<Integer>();
+
+    public SlotStore(String fileName) throws IOException {
+        Path path = Paths.get(fileName);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        long length = channel.size();
+        if (length == 0) {
+            mapSlots(INITIAL_SLOTS);
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(8, SLOT_BYTES);
+        } else {
+            if (length < HEADER_BYTES) {
+                throw new IOException("Not a slot store: " + fileName);
+            }
+            mapSlots((int) ((length - HEADER_BYTES) / SLOT_BYTES));
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || map.getInt(8) != SLOT_BYTES) {
+                throw new IOException("Not a slot store: " + fileName);
+            }
+        }
+
+        // Rebuild the index
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = offset(slot);
+            if ((map.get(offset + FLAGS) & USED) != 0) {
+                byte[] key = new byte[map.get(offset + KEY_LENGTH)];
+                map.get(offset + KEY, key);
+                index.put(new String(key, StandardCharsets.UTF_8), slot);
+            } else {
+                freeSlots.add(slot);
+            }
+        }
+    }
+
+    // Map the file with room for the given number of slots, growing it if needed
+    private void mapSlots(int slots) throws IOException {
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) slots * SLOT_BYTES);
+        capacity = slots;
+    }
+
+    private static int offset(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    // READING ==================================================================
+
+    public int size() {
+        return index.size();
+    }
+
+    // True if a game is saved under the key
+    public boolean hasGame(String key) {
+        return (readByte(key, FLAGS) & HAS_GAME) != 0;
+    }
+
+    // Saved packed board, 0 if there is none
+    public long getBoard(String key) {
+        Integer slot = index.get(key);
+        if (slot == null) {
+            return 0;
+        }
+        lock.readLock().lock();
+        try {
+            return map.getLong(offset(slot) + BOARD);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Saved game's score, 0 if there is none
+    public int getScore(String key) {
+        return readInt(key, SCORE);
+    }
+
+    // 0 if the key has no best score
+    public int getBestScore(String key) {
+        return readInt(key, BEST_SCORE);
+    }
+
+    private byte readByte(String key, int field) {
+        Integer slot = index.get(key);
+        if (slot == null) {
+            return 0;
+        }
+        lock.readLock().lock();
+        try {
+            return map.get(offset(slot) + field);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int readInt(String key, int field) {
+        Integer slot = index.get(key);
+        if (slot == null) {
+            return 0;
+        }
+        lock.readLock().lock();
+        try {
+            return map.getInt(offset(slot) + field);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // WRITING ==================================================================
+
+    // Save a game in progress and the best score
+    public void saveGame(String key, long board, int score, int bestScore) throws IOException {
+        int slot = slot(key);
+        lock.readLock().lock();
+        try {
+            int offset = offset(slot);
+            map.putLong(offset + BOARD, board);
+            map.putInt(offset + SCORE, score);
+            map.putInt(offset + BEST_SCORE, bestScore);
+            map.put(offset + FLAGS, (byte) (USED | HAS_GAME));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Game is over, forget it but keep the best score
+    public void deleteGame(String key, int bestScore) throws IOException {
+        int slot = slot(key);
+        lock.readLock().lock();
+        try {
+            int offset = offset(slot);
+            map.put(offset + FLAGS, (byte) USED);
+            map.putLong(offset + BOARD, 0);
+            map.putInt(offset + SCORE, 0);
+            map.putInt(offset + BEST_SCORE, bestScore);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Forget the key altogether, its slot is reused
+    public void remove(String key) {
+        Integer slot = index.remove(key);
+        if (slot == null) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            map.put(offset(slot) + FLAGS, (byte) 0);
+        } finally {
+            lock.readLock().unlock();
+        }
+        synchronized (freeSlots) {
+            freeSlots.add(slot);
+        }
+    }
+
+    // Slot of the key, taking a free one (growing the file if there is none) if it has none
+    private int slot(String key) throws IOException {
+        Integer slot = index.get(key);
+        if (slot != null) {
+            return slot;
+        }
+
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0 || bytes.length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("Key must be 1 to " + MAX_KEY_BYTES + " bytes: " + key);
+        }
+
+        synchronized (freeSlots) {
+            if (freeSlots.isEmpty()) {
+                int grown = capacity * 2;
+                lock.writeLock().lock();
+                try {
+                    for (int free = capacity; free < grown; free++) {
+                        freeSlots.add(free);
+                    }
+                    mapSlots(grown);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            slot = freeSlots.poll();
+        }
+
+        lock.readLock().lock();
+        try {
+            int offset = offset(slot);
+            map.put(offset + KEY_LENGTH, (byte) bytes.length);
+            map.put(offset + KEY, bytes);
+            map.put(offset + FLAGS, (byte) USED);
+        } finally {
+            lock.readLock().unlock();
+        }
+        index.put(key, slot);
+        return slot;
+    }
+
+    // Force everything written so far to disk
+    public void sync() {
+        lock.readLock().lock();
+        try {
+            map.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+}
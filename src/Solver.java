@@ -0,0 +1,593 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Automated player that picks the best direction for GameLogic.makeMove using
+ * expectimax search on the packed board.
+ *
+ * Max nodes try every direction that changes the board. Chance nodes average
+ * over every empty tile receiving a 2 (p = 0.9) or a 4 (p = 0.1), the same as
+ * GameLogic.addTile. Leaves are scored with a per-row heuristic table. Once
+ * MAX_FOURS 4 tiles have spawned along a path, further 4 spawns are scored
+ * with the heuristic instead of searched.
+ *
+ * The search deepens one level at a time until it reaches a depth based on the
+ * number of empty tiles or runs out of its time budget, and keeps the answer
+ * of the deepest level that finished. Evaluated boards are cached in a bounded
+ * TranspositionTable that is kept between moves. A max node searches the
+ * canonical form of its board (see Bitboard.canonical), so all 8 rotations and
+ * reflections of a position share one table entry.
+ *
+ * With setParallelism the root directions and the chance nodes below them are
+ * split into fork/join tasks that share the one table. The value of a node
+ * only depends on its board, depth and number of 4 spawns, and the parallel
+ * search adds values up in the same order, so it returns the same move as the
+ * sequential search at the same depth.
+ */
+public class Solver {
+
+    // Same as tileProbability in GameLogic
+    private static final double TWO_PROBABILITY = 0.9;
+
+    // 4 tiles spawned along one path before the rest are only estimated
+    private static final int MAX_FOURS = 2;
+
+    // How often (in nodes) the deadline is checked, must be a power of 2
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
+
+    // Levels below the root that are split into parallel tasks
+    private static final int PARALLEL_SPLIT_LEVELS = 2;
+
+    public static final int DEFAULT_TABLE_BITS = 20;
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = 50;
+    public static final int DEFAULT_MAX_DEPTH = 6;
+
+    private final TranspositionTable table;
+    private long timeBudgetNanos;
+    private int maxDepth;
+    private ForkJoinPool pool; // null when searching on the calling thread
+
+    // Search state, only valid during bestMove
+    private boolean useDeadline;
+    private long deadline;
+    private volatile boolean timedOut;
+    private final AtomicLong nodes = new AtomicLong();
+    private int searchedDepth;
+    private long searchNanos;
+
+    /**
+     * Creates a solver with a 2^20 entry table and a 50ms budget per move.
+     */
+    public Solver() {
+        this(DEFAULT_TABLE_BITS, DEFAULT_TIME_BUDGET_MILLIS);
+    }
+
+    public Solver(int tableBits, long timeBudgetMillis) {
+        table = new TranspositionTable(tableBits);
+        maxDepth = DEFAULT_MAX_DEPTH;
+        setTimeBudget(timeBudgetMillis);
+    }
+
+    // SEARCH =================================================================
+
+    /**
+     * Returns the best direction to move the board in (1 - up, 2 - right, 3 -
+     * down, 4 - left), or 0 if no move changes the board.
+     */
+    public int bestMove(long board) {
+        long start = System.nanoTime();
+        useDeadline = true;
+        deadline = start + timeBudgetNanos;
+        nodes.set(0);
+        searchedDepth = 0;
+
+        int best = firstMove(board);
+        if (best != 0) {
+            // Deepen until target depth or out of time, keep last finished answer
+            int targetDepth = searchDepth(board);
+            for (int depth = 1; depth <= targetDepth; depth++) {
+                timedOut = false;
+                int move = searchRoot(board, depth);
+                if (timedOut) {
+                    break;
+                }
+                best = move;
+                searchedDepth = depth;
+            }
+        }
+
+        searchNanos = System.nanoTime() - start;
+        return best;
+    }
+
+    public int bestMove(int[][] board) {
+        return bestMove(Bitboard.fromArray(board));
+    }
+
+    /**
+     * Searches the board to exactly depth, ignoring the time budget. Returns the
+     * same move whether or not the search runs in parallel.
+     */
+    public int bestMove(long board, int depth) {
+        long start = System.nanoTime();
+        useDeadline = false;
+        timedOut = false;
+        nodes.set(0);
+
+        int best = firstMove(board);
+        if (best != 0) {
+            best = searchRoot(board, depth);
+        }
+
+        searchedDepth = depth;
+        searchNanos = System.nanoTime() - start;
+        return best;
+    }
+
+    /**
+     * Depth to search a board to. The fewer empty tiles, the more the next spawn
+     * matters and the cheaper each chance node is, so search deeper.
+     */
+    public int searchDepth(long board) {
+        int empty = Bitboard.emptyCount(board);
+        int depth;
+        if (empty >= 8) {
+            depth = 2;
+        } else if (empty >= 4) {
+            depth = 3;
+        } else if (empty >= 2) {
+            depth = 4;
+        } else {
+            depth = 5;
+        }
+        return Math.min(depth, maxDepth);
+    }
+
+    // First direction that changes the board, 0 if none do
+    private static int firstMove(long board) {
+        int legal = Bitboard.legalMoves(board);
+        return legal == 0 ? 0 : Integer.numberOfTrailingZeros(legal);
+    }
+
+    private int searchRoot(long board, int depth) {
+        float[] values = new float[5];
+
+        if (pool != null) {
+            pool.invoke(new RootTask(board, depth, values));
+        } else {
+            Search search = new Search();
+            for (int direction = 1; direction <= 4 && !timedOut; direction++) {
+                long moved = Bitboard.move(board, direction);
+                values[direction] = moved == board ? -1 : search.chanceNode(moved, depth, 0);
+            }
+            search.finish();
+        }
+
+        // Ties go to the lowest direction in both modes
+        int best = 0;
+        float bestValue = -1;
+        for (int direction = 1; direction <= 4; direction++) {
+            if (values[direction] > bestValue) {
+                bestValue = values[direction];
+                best = direction;
+            }
+        }
+        return best;
+    }
+
+    // Whether a 4 spawn is searched or only estimated with the heuristic
+    private static boolean searchFour(int fours) {
+        return fours < MAX_FOURS;
+    }
+
+    /*
+     * Depth-first search on one thread. Keeps its own node count and only looks
+     * at the clock and the shared timedOut flag every DEADLINE_CHECK_INTERVAL
+     * nodes.
+     */
+    private final class Search {
+
+        private long count;
+        private boolean stopped;
+
+        // Best value over every direction that changes the board, 0 if none do
+        float maxNode(long board, int depth, int fours) {
+            if ((++count & (DEADLINE_CHECK_INTERVAL - 1)) == 0 && checkTimedOut()) {
+                stopped = true;
+            }
+            if (stopped) {
+                return 0;
+            }
+
+            if (depth == 0) {
+                return evaluate(board);
+            }
+
+            // Rotated and mirrored boards are worth the same, search one of them
+            board = Bitboard.canonical(board);
+
+            float cached = table.get(board, depth, fours);
+            if (!Float.isNaN(cached)) {
+                return cached;
+            }
+
+            float best = 0;
+            for (int direction = 1; direction <= 4; direction++) {
+                long moved = Bitboard.move(board, direction);
+                if (moved != board) {
+                    best = Math.max(best, chanceNode(moved, depth, fours));
+                }
+            }
+
+            if (!stopped) {
+                table.put(board, depth, fours, best);
+            }
+            return best;
+        }
+
+        // Average value over every possible spawn of a 2 or 4 tile
+        float chanceNode(long board, int depth, int fours) {
+            int empty = Bitboard.emptyCount(board);
+            if (empty == 0) {
+                return maxNode(board, depth - 1, fours);
+            }
+
+            double total = 0;
+            for (int i = 0; i < Bitboard.CELLS; i++) {
+                if (((board >>> (i * 4)) & 0xF) != 0) {
+                    continue;
+                }
+                long two = board | (1L << (i * 4));
+                long four = board | (2L << (i * 4));
+                total += TWO_PROBABILITY * maxNode(two, depth - 1, fours);
+                total += (1 - TWO_PROBABILITY)
+                        * (searchFour(fours) ? maxNode(four, depth - 1, fours + 1) : evaluate(four));
+            }
+
+            return (float) (total / empty);
+        }
+
+        void finish() {
+            nodes.addAndGet(count);
+        }
+    }
+
+    private boolean checkTimedOut() {
+        if (!timedOut && useDeadline && System.nanoTime() - deadline > 0) {
+            timedOut = true;
+        }
+        return timedOut;
+    }
+
+    // PARALLEL SEARCH ========================================================
+
+    // Searches the chance node under every root direction in parallel
+    @SuppressWarnings("serial")
+    private final class RootTask extends RecursiveTask<Void> {
+
+        private final long board;
+        private final int depth;
+        private final float[] values;
+
+        RootTask(long board, int depth, float[] values) {
+            this.board = board;
+            this.depth = depth;
+            this.values = values;
+        }
+
+        @Override
+        protected Void compute() {
+            ChanceTask[] tasks = new ChanceTask[5];
+            for (int direction = 1; direction <= 4; direction++) {
+                long moved = Bitboard.move(board, direction);
+                if (moved != board) {
+                    tasks[direction] = new ChanceTask(moved, depth, 0, 0);
+                    tasks[direction].fork();
+                }
+            }
+            for (int direction = 1; direction <= 4; direction++) {
+                values[direction] = tasks[direction] == null ? -1 : tasks[direction].join();
+            }
+            return null;
+        }
+    }
+
+    // Max node, split into one task per direction near the root
+    @SuppressWarnings("serial")
+    private final class MaxTask extends RecursiveTask<Float> {
+
+        private final long board;
+        private final int depth;
+        private final int fours;
+        private final int level;
+
+        MaxTask(long board, int depth, int fours, int level) {
+            this.board = board;
+            this.depth = depth;
+            this.fours = fours;
+            this.level = level;
+        }
+
+        @Override
+        protected Float compute() {
+            if (level >= PARALLEL_SPLIT_LEVELS || depth <= 1) {
+                Search search = new Search();
+                float value = search.maxNode(board, depth, fours);
+                search.finish();
+                return value;
+            }
+            if (timedOut) {
+                return 0f;
+            }
+
+            long board = Bitboard.canonical(this.board);
+
+            float cached = table.get(board, depth, fours);
+            if (!Float.isNaN(cached)) {
+                return cached;
+            }
+
+            ChanceTask[] tasks = new ChanceTask[5];
+            for (int direction = 1; direction <= 4; direction++) {
+                long moved = Bitboard.move(board, direction);
+                if (moved != board) {
+                    tasks[direction] = new ChanceTask(moved, depth, fours, level);
+                    tasks[direction].fork();
+                }
+            }
+
+            float best = 0;
+            for (int direction = 1; direction <= 4; direction++) {
+                if (tasks[direction] != null) {
+                    best = Math.max(best, tasks[direction].join());
+                }
+            }
+
+            if (!timedOut) {
+                table.put(board, depth, fours, best);
+            }
+            return best;
+        }
+    }
+
+    // Chance node, split into one task per spawn near the root
+    @SuppressWarnings("serial")
+    private final class ChanceTask extends RecursiveTask<Float> {
+
+        private final long board;
+        private final int depth;
+        private final int fours;
+        private final int level;
+
+        ChanceTask(long board, int depth, int fours, int level) {
+            this.board = board;
+            this.depth = depth;
+            this.fours = fours;
+            this.level = level;
+        }
+
+        @Override
+        protected Float compute() {
+            int empty = Bitboard.emptyCount(board);
+            if (empty == 0) {
+                return new MaxTask(board, depth - 1, fours, level + 1).compute();
+            }
+
+            MaxTask[] twos = new MaxTask[Bitboard.CELLS];
+            MaxTask[] fourTasks = new MaxTask[Bitboard.CELLS];
+            for (int i = Bitboard.CELLS - 1; i >= 0; i--) {
+                if (((board >>> (i * 4)) & 0xF) != 0) {
+                    continue;
+                }
+                twos[i] = new MaxTask(board | (1L << (i * 4)), depth - 1, fours, level + 1);
+                twos[i].fork();
+                if (searchFour(fours)) {
+                    fourTasks[i] = new MaxTask(board | (2L << (i * 4)), depth - 1, fours + 1, level + 1);
+                    fourTasks[i].fork();
+                }
+            }
+
+            // Add up in cell order, same as Search.chanceNode
+            double total = 0;
+            for (int i = 0; i < Bitboard.CELLS; i++) {
+                if (twos[i] == null) {
+                    continue;
+                }
+                total += TWO_PROBABILITY * twos[i].join();
+                total += (1 - TWO_PROBABILITY) * (fourTasks[i] != null ? fourTasks[i].join()
+                        : evaluate(board | (2L << (i * 4))));
+            }
+
+            return (float) (total / empty);
+        }
+    }
+
+    /**
+     * Times a fixed-depth search of the board on one thread and on the fork/join
+     * pool, each starting from an empty table. Returns single-thread time
+     * divided by parallel time.
+     */
+    public double measureSpeedup(long board, int depth, int threads) {
+        ForkJoinPool previous = pool;
+
+        pool = null;
+        table.clear();
+        bestMove(board, depth);
+        long sequentialNanos = searchNanos;
+
+        pool = new ForkJoinPool(threads);
+        table.clear();
+        bestMove(board, depth);
+        long parallelNanos = searchNanos;
+
+        pool.shutdown();
+        pool = previous;
+        return (double) sequentialNanos / parallelNanos;
+    }
+
+    /**
+     * Prints how much faster the parallel search is than a single thread on a
+     * mid-game board, using every available core.
+     */
+    public static void main(String[] args) {
+        int[][] midGame = { { 2, 8, 32, 256 }, 
+                            { 0, 4, 16, 128 }, 
+                            { 0, 0, 4, 64 }, 
+                            { 0, 0, 2, 8 } };
+        long board = Bitboard.fromArray(midGame);
+        int threads = Runtime.getRuntime().availableProcessors();
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+
+        Solver solver = new Solver(22, DEFAULT_TIME_BUDGET_MILLIS);
+        // Warm up the JIT before timing
+        solver.measureSpeedup(board, depth - 1, threads);
+
+        double speedup = solver.measureSpeedup(board, depth, threads);
+        System.out.printf("depth %d, %d threads: %.2fx faster than 1 thread%n", depth, threads, speedup);
+    }
+
+    // HEURISTIC ==============================================================
+
+    private static final float LOST_PENALTY = 200000f;
+    private static final double MONOTONICITY_POWER = 4.0;
+    private static final float MONOTONICITY_WEIGHT = 47f;
+    private static final double SUM_POWER = 3.5;
+    private static final float SUM_WEIGHT = 11f;
+    private static final float MERGES_WEIGHT = 700f;
+    private static final float EMPTY_WEIGHT = 270f;
+
+    // Heuristic value of every possible 16-bit row
+    private static final float[] ROW_HEURISTIC = new float[1 << 16];
+
+    static {
+        for (int row = 0; row < ROW_HEURISTIC.length; row++) {
+            ROW_HEURISTIC[row] = rowHeuristic(row);
+        }
+    }
+
+    /*
+     * Rewards empty tiles and neighbours that can merge. Penalizes rows that
+     * aren't monotonic and large tiles spread over the row. Offset by
+     * LOST_PENALTY so that a board with no moves (scored 0) is always worst.
+     */
+    private static float rowHeuristic(int row) {
+        int[] line = new int[Bitboard.SIZE];
+        for (int i = 0; i < Bitboard.SIZE; i++) {
+            line[i] = (row >>> (i * 4)) & 0xF;
+        }
+
+        double sum = 0;
+        int empty = 0;
+        int merges = 0;
+        int prev = 0;
+        int counter = 0;
+        for (int i = 0; i < Bitboard.SIZE; i++) {
+            int rank = line[i];
+            sum += Math.pow(rank, SUM_POWER);
+            if (rank == 0) {
+                empty++;
+            } else {
+                if (prev == rank) {
+                    counter++;
+                } else if (counter > 0) {
+                    merges += 1 + counter;
+                    counter = 0;
+                }
+                prev = rank;
+            }
+        }
+        if (counter > 0) {
+            merges += 1 + counter;
+        }
+
+        double monotonicityLeft = 0;
+        double monotonicityRight = 0;
+        for (int i = 1; i < Bitboard.SIZE; i++) {
+            double previous = Math.pow(line[i - 1], MONOTONICITY_POWER);
+            double current = Math.pow(line[i], MONOTONICITY_POWER);
+            if (line[i - 1] > line[i]) {
+                monotonicityLeft += previous - current;
+            } else {
+                monotonicityRight += current - previous;
+            }
+        }
+
+        return (float) (LOST_PENALTY + EMPTY_WEIGHT * empty + MERGES_WEIGHT * merges
+                - MONOTONICITY_WEIGHT * Math.min(monotonicityLeft, monotonicityRight)
+                - SUM_WEIGHT * sum);
+    }
+
+    // Heuristic value of a board, sum over its rows and columns
+    public static float evaluate(long board) {
+        long transposed = Bitboard.transpose(board);
+        float value = 0;
+        for (int i = 0; i < Bitboard.SIZE; i++) {
+            value += ROW_HEURISTIC[(int) ((board >>> (i * 16)) & 0xFFFF)];
+            value += ROW_HEURISTIC[(int) ((transposed >>> (i * 16)) & 0xFFFF)];
+        }
+        return value;
+    }
+
+    // SETTINGS ===============================================================
+
+    public void setTimeBudget(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Time budget must be positive: " + millis);
+        }
+        timeBudgetNanos = millis * 1_000_000L;
+    }
+
+    public long getTimeBudget() {
+        return timeBudgetNanos / 1_000_000L;
+    }
+
+    public void setMaxDepth(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth must be at least 1: " + depth);
+        }
+        maxDepth = depth;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    // Depth the last bestMove call finished
+    public int getSearchedDepth() {
+        return searchedDepth;
+    }
+
+    // Nodes visited by the last bestMove call
+    public long getNodes() {
+        return nodes.get();
+    }
+
+    // Time the last bestMove call took
+    public long getSearchNanos() {
+        return searchNanos;
+    }
+
+    /**
+     * Searches on a fork/join pool with the given number of threads. 1 searches
+     * on the calling thread.
+     */
+    public void setParallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least 1 thread: " + threads);
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+        pool = threads == 1 ? null : new ForkJoinPool(threads);
+    }
+
+    public int getParallelism() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+    public void clearTable() {
+        table.clear();
+    }
+
+}
@@ -0,0 +1,34 @@
+import java.util.random.RandomGenerator;
+
+/**
+ * SplitMix64 generator used to spawn tiles. Its whole state is a single long,
+ * so a game in progress can be saved with getState and resumed exactly with
+ * setState.
+ */
+public final class SpawnRandom implements RandomGenerator {
+
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    public SpawnRandom(long seed) {
+        state = seed;
+    }
+
+    @Override
+    public long nextLong() {
+        long z = (state += GAMMA);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+}
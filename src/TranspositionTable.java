@@ -0,0 +1,70 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size cache of evaluated boards for the Solver, safe to share between
+ * search threads.
+ *
+ * Each slot is two longs in one flat array: the data (value, depth and number
+ * of 4 tiles spawned so far) and the board XOR-ed with the data. A reader only
+ * accepts a slot if XOR-ing the two back gives its board, so an entry half
+ * overwritten by another thread is seen as a miss instead of a wrong value.
+ * This needs no locks, and the table never grows or allocates after creation.
+ * A new entry simply replaces whatever was in its slot.
+ */
+public class TranspositionTable {
+
+    private final AtomicLongArray slots;
+    private final int bits;
+
+    /**
+     * Creates a table with 2^bits slots.
+     */
+    public TranspositionTable(int bits) {
+        if (bits < 1 || bits > 29) {
+            throw new IllegalArgumentException("Table size must be between 2^1 and 2^29: " + bits);
+        }
+        this.bits = bits;
+        slots = new AtomicLongArray(2 << bits);
+    }
+
+    // Value of board searched to exactly depth with fours 4 tiles spawned, otherwise NaN
+    public float get(long board, int depth, int fours) {
+        int index = index(board);
+        long data = slots.getOpaque(index + 1);
+        long key = slots.getOpaque(index);
+
+        if ((key ^ data) == board && (data >>> 32) == meta(depth, fours)) {
+            return Float.intBitsToFloat((int) data);
+        }
+        return Float.NaN;
+    }
+
+    public void put(long board, int depth, int fours, float value) {
+        int index = index(board);
+        long data = ((long) meta(depth, fours) << 32) | (Float.floatToRawIntBits(value) & 0xFFFFFFFFL);
+
+        slots.setOpaque(index, board ^ data);
+        slots.setOpaque(index + 1, data);
+    }
+
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.setOpaque(i, 0);
+        }
+    }
+
+    public int capacity() {
+        return slots.length() / 2;
+    }
+
+    // depth starts at 1, so an empty slot (all zero) never matches
+    private static int meta(int depth, int fours) {
+        return (depth << 8) | fours;
+    }
+
+    // Fibonacci hashing, top bits of the product are the best mixed
+    private int index(long board) {
+        return (int) ((board * 0x9E3779B97F4A7C15L) >>> (64 - bits)) * 2;
+    }
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Fixed-capacity undo/redo history of boards and their scores.
+ *
+ * Entries live in a ring buffer of primitives, so pushing, undoing and redoing
+ * never allocate. Packed 4 x 4 boards take one long per entry, other sizes a
+ * slice of one shared byte[] of exponents (see FlatBoard). Once the buffer is
+ * full a push drops the oldest entry, which limits how far back the user can
+ * undo. Undone entries stay in the buffer and can be redone until the next push.
+ */
+public class UndoHistory {
+
+    private final int cells; // tiles per board
+    private final long[] boards; // packed boards, null for other sizes
+    private final byte[] exponents; // cells exponents per entry, null for packed boards
+    private final int[] scores;
+
+    private int start; // index of the oldest entry
+    private int size; // entries up to and including the current one
+    private int redoSize; // undone entries after the current one
+
+    // History of packed 4 x 4 boards
+    public UndoHistory(int capacity) {
+        this(capacity, Bitboard.CELLS, true);
+    }
+
+    // History of flat boards with the given number of tiles
+    public UndoHistory(int capacity, int cells) {
+        this(capacity, cells, false);
+    }
+
+    private UndoHistory(int capacity, int cells, boolean packed) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Undo depth must be at least 1: " + capacity);
+        }
+        this.cells = cells;
+        boards = packed ? new long[capacity] : null;
+        exponents = packed ? null : new byte[capacity * cells];
+        scores = new int[capacity];
+    }
+
+    // Index in the buffer of the i-th entry, oldest first
+    private int slot(int i) {
+        int index = start + i;
+        return index >= scores.length ? index - scores.length : index;
+    }
+
+    // Make room for a new current entry and return its slot, forgets the redo entries
+    private int next() {
+        redoSize = 0;
+        if (size == scores.length) {
+            start = slot(1);
+        } else {
+            size++;
+        }
+        return slot(size - 1);
+    }
+
+    // Add a new current packed board
+    public void push(long board, int score) {
+        int index = next();
+        boards[index] = board;
+        scores[index] = score;
+    }
+
+    // Add a new current flat board
+    public void push(byte[] board, int score) {
+        int index = next();
+        System.arraycopy(board, 0, exponents, index * cells, cells);
+        scores[index] = score;
+    }
+
+    // Step back one entry, the oldest entry can't be undone
+    public boolean undo() {
+        if (size <= 1) {
+            return false;
+        }
+        size--;
+        redoSize++;
+        return true;
+    }
+
+    public boolean redo() {
+        if (redoSize == 0) {
+            return false;
+        }
+        size++;
+        redoSize--;
+        return true;
+    }
+
+    public void clear() {
+        start = 0;
+        size = 0;
+        redoSize = 0;
+    }
+
+    // Packed board of the current entry
+    public long board() {
+        return boards[slot(size - 1)];
+    }
+
+    // Copy the flat board of the current entry into board
+    public void copyBoard(byte[] board) {
+        System.arraycopy(exponents, slot(size - 1) * cells, board, 0, cells);
+    }
+
+    // Score of the current entry
+    public int score() {
+        return scores[slot(size - 1)];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int redoSize() {
+        return redoSize;
+    }
+
+    public int capacity() {
+        return scores.length;
+    }
+
+    /**
+     * Copies every entry, redo entries included, oldest first. Boards are
+     * written as exponents, one byte per tile, packed boards too. The arrays
+     * need room for size() + redoSize() entries.
+     */
+    public void copyTo(byte[] toExponents, int[] toScores) {
+        for (int i = 0; i < size + redoSize; i++) {
+            int index = slot(i);
+            if (boards != null) {
+                Bitboard.toExponents(boards[index], toExponents, i * cells);
+            } else {
+                System.arraycopy(exponents, index * cells, toExponents, i * cells, cells);
+            }
+            toScores[i] = scores[index];
+        }
+    }
+
+    /**
+     * Replaces the history with the given entries, written as by copyTo, of
+     * which the last redo are redo entries. Keeps only the newest entries that
+     * fit.
+     */
+    public void restore(byte[] fromExponents, int[] fromScores, int count, int redo) {
+        clear();
+        for (int i = 0; i < count; i++) {
+            int index = next();
+            if (boards != null) {
+                boards[index] = Bitboard.fromExponents(fromExponents, i * cells);
+            } else {
+                System.arraycopy(fromExponents, i * cells, exponents, index * cells, cells);
+            }
+            scores[index] = fromScores[i];
+        }
+        for (int i = 0; i < redo; i++) {
+            undo();
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+import java.util.SplittableRandom;
+
+/**
+ * Incremental Zobrist hash of a FlatBoard, plus the hashes of its 8 rotations
+ * and reflections.
+ *
+ * Every (tile, exponent) pair has a fixed random key and a board hashes to the
+ * XOR of the keys of its tiles, so changing one tile is two XORs. The same is
+ * kept for every symmetric image of the board, which makes the smallest of the
+ * 8 a canonical hash: boards that are rotated or mirrored copies of each other
+ * share it.
+ *
+ * Packed 4 x 4 boards don't need this, the long is already an exact key (see
+ * Bitboard.canonical).
+ */
+public final class Zobrist {
+
+    // Keys per tile for exponents 0 - 31, exponent 0 (empty) is always 0
+    private static final int EXPONENTS = 32;
+    private static final long[] KEYS = new long[GameRules.MAX_SIZE * GameRules.MAX_SIZE * EXPONENTS];
+
+    static {
+        // Fixed seed so hashes are the same in every run
+        SplittableRandom random = new SplittableRandom(0x2048);
+        for (int i = 0; i < KEYS.length; i++) {
+            KEYS[i] = i % EXPONENTS == 0 ? 0 : random.nextLong();
+        }
+    }
+
+    // Tile each tile moves to under each symmetry, offset to its keys
+    private final int[][] images;
+    private final long[] hashes = new long[8];
+
+    public Zobrist(int size) {
+        images = new int[8][size * size];
+        for (int symmetry = 0; symmetry < 8; symmetry++) {
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    // bit 2 transposes, bit 0 reverses the rows, bit 1 the columns
+                    int imageRow = (symmetry & 4) != 0 ? col : row;
+                    int imageCol = (symmetry & 4) != 0 ? row : col;
+                    if ((symmetry & 1) != 0) {
+                        imageRow = size - 1 - imageRow;
+                    }
+                    if ((symmetry & 2) != 0) {
+                        imageCol = size - 1 - imageCol;
+                    }
+                    images[symmetry][row * size + col] = (imageRow * size + imageCol) * EXPONENTS;
+                }
+            }
+        }
+    }
+
+    // Hash the whole board from scratch
+    public void reset(byte[] cells) {
+        for (int symmetry = 0; symmetry < 8; symmetry++) {
+            int[] image = images[symmetry];
+            long hash = 0;
+            for (int i = 0; i < cells.length; i++) {
+                hash ^= KEYS[image[i] + cells[i]];
+            }
+            hashes[symmetry] = hash;
+        }
+    }
+
+    // Tile at index changed from exponent from to exponent to
+    public void update(int index, int from, int to) {
+        for (int symmetry = 0; symmetry < 8; symmetry++) {
+            int key = images[symmetry][index];
+            hashes[symmetry] ^= KEYS[key + from] ^ KEYS[key + to];
+        }
+    }
+
+    // Hash of the board as it is
+    public long hash() {
+        return hashes[0];
+    }
+
+    // Smallest hash over the 8 rotations and reflections
+    public long canonicalHash() {
+        long min = hashes[0];
+        for (int symmetry = 1; symmetry < 8; symmetry++) {
+            min = Math.min(min, hashes[symmetry]);
+        }
+        return min;
+    }
+
+}
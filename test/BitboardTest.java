@@ -0,0 +1,182 @@
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BitboardTest {
+
+    int[][] board1 = { { 0, 0, 0, 0 }, 
+                       { 0, 0, 0, 0 }, 
+                       { 4, 2, 2, 2 }, 
+                       { 2, 2, 2, 4 } };
+
+    // packing and unpacking gives back the same board
+    @Test
+    public void packUnpackTest() {
+        long packed = Bitboard.fromArray(board1);
+
+        assertArrayEquals(board1, Bitboard.toArray(packed));
+        assertEquals(4, Bitboard.getTile(packed, 2, 0));
+        assertEquals(8, Bitboard.emptyCount(packed));
+    }
+
+    // transposing twice gives back the same board
+    @Test
+    public void transposeTwiceTest() {
+        long packed = Bitboard.fromArray(board1);
+
+        assertEquals(packed, Bitboard.transpose(Bitboard.transpose(packed)));
+        assertEquals(Bitboard.getTile(packed, 3, 0), Bitboard.getTile(Bitboard.transpose(packed), 0, 3));
+    }
+
+    // reverse swaps the rows
+    @Test
+    public void reverseTest() {
+        int[][] reversed = { { 2, 2, 2, 4 }, 
+                             { 4, 2, 2, 2 }, 
+                             { 0, 0, 0, 0 }, 
+                             { 0, 0, 0, 0 } };
+
+        assertArrayEquals(reversed, Bitboard.toArray(Bitboard.reverse(Bitboard.fromArray(board1))));
+    }
+
+    // row slide merges each pair once (ex. 2 2 2 2 = 4 4 0 0)
+    @Test
+    public void slideRowTest() {
+        // exponents 1 1 1 1, column 0 in low nibble
+        long slid = Bitboard.slideRowLeft(0x1111);
+
+        assertEquals(0x22, slid & 0xFFFF);
+        assertEquals(8, slid >>> 32);
+    }
+
+    // largest tile can't merge since it wouldn't fit in a nibble
+    @Test
+    public void slideRowMaxTileTest() {
+        long slid = Bitboard.slideRowLeft(0xFF);
+
+        assertEquals(0xFF, slid & 0xFFFF);
+        assertEquals(0, slid >>> 32);
+    }
+
+    // moving left and right on the packed board
+    @Test
+    public void moveTest() {
+        int[][] left = { { 0, 0, 0, 0 }, 
+                         { 0, 0, 0, 0 }, 
+                         { 4, 4, 2, 0 }, 
+                         { 4, 2, 4, 0 } };
+        int[][] right = { { 0, 0, 0, 0 }, 
+                          { 0, 0, 0, 0 }, 
+                          { 0, 4, 2, 4 }, 
+                          { 0, 2, 4, 4 } };
+
+        long packed = Bitboard.fromArray(board1);
+
+        assertArrayEquals(left, Bitboard.toArray(Bitboard.move(packed, 4)));
+        assertArrayEquals(right, Bitboard.toArray(Bitboard.move(packed, 2)));
+        assertEquals(8, Bitboard.score(packed, 4));
+    }
+
+    // lookup tables agree with sliding every possible row by hand
+    @Test
+    public void lookupTableTest() {
+        for (int row = 0; row < 1 << 16; row++) {
+            long slid = Bitboard.slideRowLeft(row) & 0xFFFF;
+            long slidRight = Bitboard.reverseRow((int) (Bitboard.slideRowLeft(Bitboard.reverseRow(row)) & 0xFFFF));
+
+            assertEquals(slid, Bitboard.move(row, 4));
+            assertEquals(slidRight, Bitboard.move(row, 2));
+            assertEquals(Bitboard.transpose(slid), Bitboard.move(Bitboard.transpose(row), 1));
+            assertEquals(Bitboard.transpose(slidRight), Bitboard.move(Bitboard.transpose(row), 3));
+        }
+    }
+
+    // quick legal move check agrees with trying every direction
+    @Test
+    public void hasLegalMoveTest() {
+        SplittableRandom rng = new SplittableRandom(3);
+        for (int i = 0; i < 100000; i++) {
+            // mostly full boards, with small exponents so neighbours often match
+            long board = 0;
+            for (int cell = 0; cell < Bitboard.CELLS; cell++) {
+                int exponent = rng.nextInt(20) == 0 ? 0 : 1 + rng.nextInt(i % 2 == 0 ? 4 : 15);
+                board |= (long) exponent << (cell * 4);
+            }
+
+            assertEquals(Bitboard.legalMoves(board) != 0, Bitboard.hasLegalMove(board));
+        }
+    }
+
+    // largest tiles next to each other can't merge, so there is no move
+    @Test
+    public void maxTilesNoMoveTest() {
+        int[][] exponents = { { 15, 15, 15, 2 }, 
+                              { 3, 15, 4, 15 }, 
+                              { 15, 5, 15, 6 }, 
+                              { 7, 15, 8, 15 } };
+        long board = 0;
+        for (int row = 0; row < 4; row++) {
+            for (int col = 0; col < 4; col++) {
+                board = Bitboard.setExponent(board, row, col, exponents[row][col]);
+            }
+        }
+
+        assertFalse(Bitboard.hasLegalMove(board));
+        assertEquals(0, Bitboard.legalMoves(board));
+    }
+
+    // every rotation and reflection has the same canonical board
+    @Test
+    public void canonicalTest() {
+        long packed = Bitboard.fromArray(board1);
+        long transposed = Bitboard.transpose(packed);
+        long[] symmetries = { packed, Bitboard.reverse(packed), Bitboard.mirror(packed),
+            Bitboard.reverse(Bitboard.mirror(packed)), transposed, Bitboard.reverse(transposed),
+            Bitboard.mirror(transposed), Bitboard.reverse(Bitboard.mirror(transposed)) };
+
+        for (long symmetry : symmetries) {
+            assertEquals(Bitboard.canonical(packed), Bitboard.canonical(symmetry));
+        }
+        assertNotEquals(Bitboard.canonical(packed), Bitboard.canonical(Bitboard.move(packed, 4)));
+    }
+
+    // moving a batch of boards gives the same as moving each one
+    @Test
+    public void batchMoveTest() {
+        SplittableRandom rng = new SplittableRandom(5);
+        int count = 100;
+        long[] boards = new long[count];
+        for (int i = 0; i < count; i++) {
+            // Random boards with few distinct exponents so rows merge
+            for (int cell = 0; cell < 16; cell++) {
+                boards[i] |= (long) rng.nextInt(4) << (4 * cell);
+            }
+        }
+        long[] moved = new long[count];
+        int[] scores = new int[count];
+        boolean[] changed = new boolean[count];
+
+        for (int direction = 1; direction <= 4; direction++) {
+            Bitboard.move(boards, count, direction, moved, scores, changed);
+            for (int i = 0; i < count; i++) {
+                assertEquals(Bitboard.move(boards[i], direction), moved[i]);
+                assertEquals(Bitboard.score(boards[i], direction), scores[i]);
+                assertEquals(moved[i] != boards[i], changed[i]);
+            }
+        }
+
+        Bitboard.move(boards, count, 2, moved, null, null);
+        assertEquals(Bitboard.move(boards[0], 2), moved[0]);
+        assertThrows(IllegalArgumentException.class, () -> Bitboard.move(boards, count, 1, boards, null, null));
+
+        // only 1 - 4 are directions, for the batch and single boards alike
+        assertThrows(IllegalArgumentException.class, () -> Bitboard.move(boards, count, 0, moved, scores, changed));
+        assertThrows(IllegalArgumentException.class, () -> Bitboard.move(boards, count, 5, moved, scores, changed));
+        assertThrows(IllegalArgumentException.class, () -> Bitboard.move(boards[0], 0));
+        assertThrows(IllegalArgumentException.class, () -> Bitboard.score(boards[0], 5));
+    }
+
+}
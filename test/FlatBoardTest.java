@@ -0,0 +1,166 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlatBoardTest {
+
+    int[][] board5 = { { 2, 2, 2, 2, 2 },
+                       { 0, 0, 4, 0, 4 },
+                       { 8, 0, 0, 0, 0 },
+                       { 0, 0, 0, 0, 0 },
+                       { 2, 4, 8, 16, 32 } };
+
+    // left merges each pair once and the odd tile stays
+    @Test
+    public void moveLeftTest() {
+        int[][] expected = { { 4, 4, 2, 0, 0 },
+                             { 8, 0, 0, 0, 0 },
+                             { 8, 0, 0, 0, 0 },
+                             { 0, 0, 0, 0, 0 },
+                             { 2, 4, 8, 16, 32 } };
+        byte[] cells = new byte[25];
+        FlatBoard.fromArray(board5, cells);
+
+        long result = FlatBoard.move(cells, 5, 4, 11);
+
+        assertArrayEquals(expected, FlatBoard.toArray(cells, 5));
+        assertEquals(4 + 4 + 8, (int) result);
+        assertTrue((result & FlatBoard.CHANGED) != 0);
+        assertFalse((result & FlatBoard.WON) != 0);
+    }
+
+    // merging into the winning tile is reported
+    @Test
+    public void moveWinTest() {
+        int[][] board3 = { { 8, 8, 0 },
+                           { 0, 0, 0 },
+                           { 0, 0, 0 } };
+        byte[] cells = new byte[9];
+        FlatBoard.fromArray(board3, cells);
+
+        assertTrue((FlatBoard.move(cells, 3, 2, 4) & FlatBoard.WON) != 0);
+        assertEquals(16, FlatBoard.getTile(cells, 3, 0, 2));
+
+        // nothing left to move right
+        assertEquals(0, FlatBoard.move(cells, 3, 2, 4));
+    }
+
+    // on 4 x 4 boards moves, scores and legal moves match Bitboard
+    @Test
+    public void matchesBitboardTest() {
+        SplittableRandom random = new SplittableRandom(11);
+        byte[] cells = new byte[Bitboard.CELLS];
+
+        for (int i = 0; i < 20000; i++) {
+            long board = 0;
+            for (int cell = 0; cell < Bitboard.CELLS; cell++) {
+                board |= (long) random.nextInt(5) << (cell * 4);
+            }
+
+            assertEquals(Bitboard.legalMoves(board), FlatBoard.legalMoves(toCells(board, cells), 4));
+            assertEquals(Bitboard.hasLegalMove(board), FlatBoard.hasLegalMove(cells, 4));
+
+            for (int direction = 1; direction <= 4; direction++) {
+                long result = FlatBoard.move(toCells(board, cells), 4, direction, 11);
+
+                assertEquals(Bitboard.move(board, direction), Bitboard.fromExponents(cells, 0));
+                assertEquals(Bitboard.score(board, direction), (int) result);
+                assertEquals(Bitboard.move(board, direction) != board, (result & FlatBoard.CHANGED) != 0);
+            }
+        }
+    }
+
+    // transpose and reverse match Bitboard too
+    @Test
+    public void transposeReverseTest() {
+        long board = 0x0123456789ABCDEFL;
+        byte[] cells = toCells(board, new byte[Bitboard.CELLS]);
+
+        FlatBoard.transpose(cells, 4);
+        assertEquals(Bitboard.transpose(board), Bitboard.fromExponents(cells, 0));
+        FlatBoard.reverse(cells, 4);
+        assertEquals(Bitboard.reverse(Bitboard.transpose(board)), Bitboard.fromExponents(cells, 0));
+    }
+
+    // putting every recorded tile where it went gives the board after the move
+    @Test
+    public void displacementsTest() {
+        SplittableRandom random = new SplittableRandom(7);
+        Displacements displacements = new Displacements();
+        byte[] cells = new byte[36];
+        byte[] moved = new byte[36];
+
+        for (int i = 0; i < 5000; i++) {
+            for (int cell = 0; cell < cells.length; cell++) {
+                cells[cell] = (byte) random.nextInt(4);
+            }
+            int direction = random.nextInt(4) + 1;
+            displacements.record(cells, 6, direction);
+
+            byte[] expected = cells.clone();
+            long result = FlatBoard.move(expected, 6, direction, 11);
+
+            Arrays.fill(moved, (byte) 0);
+            for (int d = 0; d < displacements.count(); d++) {
+                int exponent = displacements.exponent(d);
+                moved[displacements.to(d)] = (byte) (displacements.merged(d) ? exponent + 1 : exponent);
+            }
+            assertArrayEquals(expected, moved);
+            assertEquals((result & FlatBoard.CHANGED) != 0, displacements.moved());
+        }
+    }
+
+    private static byte[] toCells(long board, byte[] cells) {
+        Bitboard.toExponents(board, cells, 0);
+        return cells;
+    }
+
+    // hash kept up to date by moves equals hashing the board from scratch
+    @Test
+    public void zobristIncrementalTest() {
+        SplittableRandom random = new SplittableRandom(3);
+        byte[] cells = new byte[25];
+        Zobrist hash = new Zobrist(5);
+        Zobrist check = new Zobrist(5);
+        hash.reset(cells);
+
+        for (int i = 0; i < 500; i++) {
+            int cell = FlatBoard.spawnRandom(cells, random, 0.9);
+            if (cell < 0) {
+                break;
+            }
+            hash.update(cell, 0, cells[cell]);
+            FlatBoard.move(cells, 5, random.nextInt(4) + 1, 11, hash);
+
+            check.reset(cells);
+            assertEquals(check.hash(), hash.hash());
+            assertEquals(check.canonicalHash(), hash.canonicalHash());
+        }
+    }
+
+    // rotated and mirrored boards share a canonical hash
+    @Test
+    public void zobristCanonicalTest() {
+        byte[] cells = new byte[25];
+        FlatBoard.fromArray(board5, cells);
+        Zobrist hash = new Zobrist(5);
+        hash.reset(cells);
+        long canonical = hash.canonicalHash();
+
+        FlatBoard.transpose(cells, 5);
+        hash.reset(cells);
+        assertEquals(canonical, hash.canonicalHash());
+        FlatBoard.reverse(cells, 5);
+        hash.reset(cells);
+        assertEquals(canonical, hash.canonicalHash());
+
+        FlatBoard.move(cells, 5, 1, 11);
+        hash.reset(cells);
+        assertNotEquals(canonical, hash.canonicalHash());
+    }
+
+}
@@ -0,0 +1,35 @@
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameBoardTest {
+
+    // only tiles that changed, or that the animated move slid, merged or spawned, are repainted
+    @Test
+    public void dirtyTilesTest() {
+        byte[] board = new byte[16];
+        byte[] shown = board.clone();
+        assertEquals(0, GameBoard.dirtyTiles(shown, board, null));
+
+        // undo, redo or load: just the tiles that differ
+        board[6] = 3;
+        board[9] = 1;
+        assertEquals((1L << 6) | (1L << 9), GameBoard.dirtyTiles(shown, board, null));
+
+        // row 0 merges to the left, the tile in cell 4 stays where it is
+        byte[] before = new byte[16];
+        before[0] = 1;
+        before[3] = 1;
+        before[4] = 2;
+        Displacements moves = new Displacements();
+        moves.record(before, 4, 4);
+        moves.spawned(15, 1);
+
+        byte[] after = new byte[16];
+        after[0] = 2;
+        after[4] = 2;
+        after[15] = 1;
+        assertEquals(1L | (1L << 3) | (1L << 15), GameBoard.dirtyTiles(after.clone(), after, moves));
+    }
+
+}
@@ -0,0 +1,179 @@
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameEventBusTest {
+
+    // the events of a whole game add up to the game
+    @Test
+    public void gameEventsTest() {
+        GameLogic game = new GameLogic(new SplittableRandom(6), Durability.NONE);
+        GameEventBus bus = new GameEventBus(1 << 16);
+        game.setEventBus(bus);
+        GameEventBus.Subscription subscription = bus.subscribe();
+
+        final int[] counts = new int[GameEventBus.Type.values().length];
+        final int[] score = new int[1];
+        final int[] merges = new int[1];
+        GameEventBus.Handler handler = new GameEventBus.Handler() {
+            public void onEvent(long sequence, GameEventBus.Type type, int first, int second) {
+                counts[type.ordinal()]++;
+                if (type == GameEventBus.Type.SCORE_CHANGED) {
+                    score[0] += second;
+                    assertEquals(score[0], first);
+                } else if (type == GameEventBus.Type.TILES_MERGED) {
+                    merges[0] += first;
+                }
+            }
+        };
+
+        game.newGame();
+        SplittableRandom rng = new SplittableRandom(7);
+        int moves = 0;
+        int undos = 0;
+        while (game.getGameState() == GameState.STARTED) {
+            int before = game.getScore();
+            long board = game.getPackedBoard();
+            game.makeMove(rng.nextInt(4) + 1);
+            if (game.getPackedBoard() != board) {
+                moves++;
+            }
+            if (game.getScore() > before && rng.nextInt(8) == 0 && game.getGameState() == GameState.STARTED) {
+                assertTrue(game.undoMove());
+                undos++;
+            }
+            subscription.poll(handler, Integer.MAX_VALUE);
+        }
+
+        assertEquals(0, subscription.getLost());
+        assertEquals(0, subscription.getBacklog());
+        assertEquals(game.getScore(), score[0]);
+        assertEquals(moves, counts[GameEventBus.Type.MOVE_APPLIED.ordinal()]);
+        assertEquals(moves + 2, counts[GameEventBus.Type.TILE_SPAWNED.ordinal()]);
+        assertEquals(undos, counts[GameEventBus.Type.UNDO.ordinal()]);
+        assertTrue(merges[0] > 0);
+        assertEquals(1, counts[GameEventBus.Type.GAME_WON.ordinal()] + counts[GameEventBus.Type.GAME_LOST.ordinal()]);
+    }
+
+    // loading a saved game publishes where it ended up, not the moves replayed to get there
+    @Test
+    public void loadGameEventsTest() {
+        GameLogic played = new GameLogic(new SplittableRandom(6), Durability.FSYNC);
+        played.newGame();
+        for (int i = 0; i < 40 && played.getGameState() == GameState.STARTED; i++) {
+            played.makeMove(Integer.numberOfTrailingZeros(played.legalMoves()));
+            if (i % 10 == 9) {
+                played.undoMove();
+            }
+        }
+        assertEquals(GameState.STARTED, played.getGameState());
+        assertTrue(played.getScore() > 0);
+
+        GameLogic loaded = new GameLogic(new SplittableRandom(7), Durability.NONE);
+        GameEventBus bus = new GameEventBus(1 << 12);
+        loaded.setEventBus(bus);
+        GameEventBus.Subscription subscription = bus.subscribe();
+        loaded.loadGame();
+        assertEquals(played.getScore(), loaded.getScore());
+
+        final int[] counts = new int[GameEventBus.Type.values().length];
+        final int[] score = new int[1];
+        subscription.poll(new GameEventBus.Handler() {
+            public void onEvent(long sequence, GameEventBus.Type type, int first, int second) {
+                counts[type.ordinal()]++;
+                if (type == GameEventBus.Type.SCORE_CHANGED) {
+                    score[0] = first;
+                }
+            }
+        }, Integer.MAX_VALUE);
+
+        assertEquals(0, counts[GameEventBus.Type.MOVE_APPLIED.ordinal()]);
+        assertEquals(0, counts[GameEventBus.Type.TILES_MERGED.ordinal()]);
+        assertEquals(0, counts[GameEventBus.Type.TILE_SPAWNED.ordinal()]);
+        assertEquals(0, counts[GameEventBus.Type.UNDO.ordinal()]);
+        assertEquals(1, counts[GameEventBus.Type.SCORE_CHANGED.ordinal()]);
+        assertEquals(loaded.getScore(), score[0]);
+    }
+
+    // nothing is published until somebody subscribes
+    @Test
+    public void noSubscriberTest() {
+        GameLogic game = new GameLogic(new SplittableRandom(6), Durability.NONE);
+        GameEventBus bus = new GameEventBus(64);
+        game.setEventBus(bus);
+        game.newGame();
+        game.makeMove(Integer.numberOfTrailingZeros(game.legalMoves()));
+        assertFalse(bus.hasSubscribers());
+        assertEquals(-1, bus.getCursor());
+
+        bus.subscribe();
+        game.makeMove(Integer.numberOfTrailingZeros(game.legalMoves()));
+        assertTrue(bus.getCursor() >= 1);
+    }
+
+    // a subscriber more than the capacity behind skips to the oldest event left
+    @Test
+    public void lappedTest() {
+        GameEventBus bus = new GameEventBus(6);
+        assertEquals(8, bus.getCapacity());
+        GameEventBus.Subscription subscription = bus.subscribe();
+        for (int i = 0; i < 100; i++) {
+            bus.publish(GameEventBus.Type.SCORE_CHANGED, i, 0);
+        }
+
+        final long[] first = { -1 };
+        int read = subscription.poll(new GameEventBus.Handler() {
+            public void onEvent(long sequence, GameEventBus.Type type, int value, int second) {
+                assertEquals(sequence, value);
+                if (first[0] < 0) {
+                    first[0] = sequence;
+                }
+            }
+        }, Integer.MAX_VALUE);
+
+        assertEquals(8, read);
+        assertEquals(92, first[0]);
+        assertEquals(92, subscription.getLost());
+        assertEquals(0, bus.subscribe().poll(null, 1));
+    }
+
+    // a subscriber on another thread sees events whole and in order, or counts them lost
+    @Test
+    public void concurrentTest() throws InterruptedException {
+        final GameEventBus bus = new GameEventBus(64);
+        final int total = 1_000_000;
+        GameEventBus.Subscription subscription = bus.subscribe();
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < total; i++) {
+                    bus.publish(GameEventBus.Type.TILE_SPAWNED, i, ~i);
+                }
+            }
+        });
+        producer.start();
+
+        final long[] last = { -1 };
+        final long[] read = { 0 };
+        GameEventBus.Handler handler = new GameEventBus.Handler() {
+            public void onEvent(long sequence, GameEventBus.Type type, int first, int second) {
+                assertTrue(sequence > last[0]);
+                assertEquals(GameEventBus.Type.TILE_SPAWNED, type);
+                assertEquals(sequence, first);
+                assertEquals(~first, second);
+                last[0] = sequence;
+                read[0]++;
+            }
+        };
+        while (producer.isAlive() || subscription.getBacklog() > 0) {
+            subscription.poll(handler, 256);
+        }
+        producer.join();
+        subscription.poll(handler, Integer.MAX_VALUE);
+
+        assertEquals(total, read[0] + subscription.getLost());
+        assertEquals(total - 1, last[0]);
+    }
+
+}
@@ -0,0 +1,244 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameServerTest {
+
+    // sessions are independent games, created by their first command
+    @Test
+    public void sessionTest() throws Exception {
+        SessionManager manager = new SessionManager(2, SessionManager.DEFAULT_IDLE_MILLIS, 1000);
+        try {
+            String first = manager.submit("a", "STATE").get();
+            assertTrue(first.startsWith("OK 0 0 STARTED "), first);
+            assertEquals(4 + 16, first.split(" ").length);
+            assertEquals(1, manager.getSessionCount());
+
+            for (int i = 0; i < 50; i++) {
+                assertTrue(manager.submit("a", i % 2 == 0 ? "left" : "UP").get().startsWith("OK"));
+            }
+            assertTrue(manager.submit("a", "UNDO").get().startsWith("OK"));
+            assertTrue(manager.submit("a", "fly").get().startsWith("ERR"));
+
+            String other = manager.submit("b", "NEW").get();
+            assertTrue(other.startsWith("OK 0 0 STARTED "), other);
+            assertEquals(2, manager.getSessionCount());
+
+            assertEquals("OK closed", manager.submit("a", "CLOSE").get());
+            assertTrue(manager.submit("a", "CLOSE").get().startsWith("ERR"));
+            assertEquals(1, manager.getSessionCount());
+        } finally {
+            manager.close();
+        }
+    }
+
+    // idle sessions are evicted, no more than maxSessions are created
+    @Test
+    public void evictionTest() throws Exception {
+        SessionManager manager = new SessionManager(2, 50, 3);
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(manager.submit("s" + i, "STATE").get().startsWith("OK"));
+            }
+            assertEquals("ERR too many sessions", manager.submit("s3", "STATE").get());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (manager.getSessionCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, manager.getSessionCount());
+            assertTrue(manager.submit("s3", "STATE").get().startsWith("OK"));
+        } finally {
+            manager.close();
+        }
+    }
+
+    // sessions created at once on different stripes stay within maxSessions
+    @Test
+    public void maxSessionsTest() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            SessionManager manager = new SessionManager(16, SessionManager.DEFAULT_IDLE_MILLIS, 10);
+            try {
+                List<Future<String>> replies = new ArrayList<Future<String>>();
+                for (int i = 0; i < 400; i++) {
+                    replies.add(manager.submit("p" + i, "STATE"));
+                }
+                String open = null;
+                int created = 0;
+                for (int i = 0; i < replies.size(); i++) {
+                    if (replies.get(i).get().startsWith("OK")) {
+                        open = "p" + i;
+                        created++;
+                    }
+                }
+                assertEquals(10, created);
+                assertEquals(10, manager.getSessionCount());
+
+                // closing one frees its place
+                assertEquals("OK closed", manager.submit(open, "CLOSE").get());
+                assertTrue(manager.submit("q", "STATE").get().startsWith("OK"));
+                assertEquals("ERR too many sessions", manager.submit("r", "STATE").get());
+            } finally {
+                manager.close();
+            }
+        }
+    }
+
+    // requests and replies over the socket, one line each
+    @Test
+    public void socketTest() throws Exception {
+        SessionManager manager = new SessionManager(2, SessionManager.DEFAULT_IDLE_MILLIS, 1000);
+        GameServer server = new GameServer(manager, 0);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            out.println("alice NEW");
+            assertTrue(in.readLine().startsWith("OK 0 0 STARTED"));
+            out.println("bob RIGHT");
+            assertTrue(in.readLine().startsWith("OK"));
+            out.println("alice");
+            assertTrue(in.readLine().startsWith("ERR"));
+            out.println("QUIT");
+            assertNull(in.readLine());
+            assertEquals(2, manager.getSessionCount());
+        } finally {
+            server.close();
+            manager.close();
+        }
+    }
+
+    // close ends the connections that are still open
+    @Test
+    public void closeTest() throws Exception {
+        SessionManager manager = new SessionManager(2, SessionManager.DEFAULT_IDLE_MILLIS, 1000);
+        GameServer server = new GameServer(manager, 0);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            socket.setSoTimeout(5000);
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out.println("alice STATE");
+            assertTrue(in.readLine().startsWith("OK"));
+            assertEquals(1, server.getConnectionCount());
+
+            server.close();
+            String line;
+            try {
+                line = in.readLine();
+            } catch (SocketException e) {
+                line = null; // reset by the server
+            }
+            assertNull(line);
+            assertEquals(0, server.getConnectionCount());
+        } finally {
+            server.close();
+            manager.close();
+        }
+    }
+
+    // slots keep their games and best scores across reopening, and grow past the first file size
+    @Test
+    public void slotStoreTest() throws Exception {
+        File file = new File("test_sessions.bin");
+        file.delete();
+        try {
+            SlotStore store = new SlotStore(file.getPath());
+            for (int i = 0; i < 3000; i++) {
+                store.saveGame("p" + i, i * 31L, i, i * 2);
+            }
+            store.deleteGame("p1", 77);
+            store.remove("p2");
+            store.saveGame("q", 5, 6, 7); // takes p2's slot
+            store.close();
+
+            store = new SlotStore(file.getPath());
+            assertEquals(3000, store.size());
+            assertTrue(store.hasGame("p2999"));
+            assertEquals(2999 * 31L, store.getBoard("p2999"));
+            assertEquals(2999, store.getScore("p2999"));
+            assertEquals(2999 * 2, store.getBestScore("p2999"));
+            assertFalse(store.hasGame("p1"));
+            assertEquals(77, store.getBestScore("p1"));
+            assertFalse(store.hasGame("p2"));
+            assertEquals(5, store.getBoard("q"));
+            assertEquals(0, store.getBestScore("nobody"));
+            store.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    // a session's game is saved as it is played and LOAD continues it in a new session
+    @Test
+    public void loadTest() throws Exception {
+        File file = new File("test_sessions.bin");
+        file.delete();
+        SlotStore store = new SlotStore(file.getPath());
+        SessionManager manager = new SessionManager(2, SessionManager.DEFAULT_IDLE_MILLIS, 1000, store, null);
+        try {
+            assertEquals("ERR no saved game", manager.submit("a", "LOAD").get());
+            String played = null;
+            for (int i = 0; i < 20; i++) {
+                played = manager.submit("a", i % 2 == 0 ? "LEFT" : "DOWN").get();
+            }
+            assertTrue(store.hasGame("a"));
+            assertEquals("OK closed", manager.submit("a", "CLOSE").get());
+
+            // Same board and score
+            String loaded = manager.submit("a", "LOAD").get();
+            String[] before = played.split(" ");
+            String[] after = loaded.split(" ");
+            assertEquals(before[1], after[1]);
+            assertEquals(Arrays.asList(before).subList(3, before.length), Arrays.asList(after).subList(3, after.length));
+        } finally {
+            manager.close();
+            store.close();
+            file.delete();
+        }
+    }
+
+    // a new session continues the saved game, an UNDO with nothing to undo doesn't overwrite it
+    @Test
+    public void closeUndoLoadTest() throws Exception {
+        File file = new File("test_sessions.bin");
+        file.delete();
+        SlotStore store = new SlotStore(file.getPath());
+        SessionManager manager = new SessionManager(2, SessionManager.DEFAULT_IDLE_MILLIS, 1000, store, null);
+        try {
+            manager.submit("alice", "NEW").get();
+            String played = null;
+            for (int i = 0; i < 20; i++) {
+                played = manager.submit("alice", i % 2 == 0 ? "LEFT" : "DOWN").get();
+            }
+            assertEquals("OK closed", manager.submit("alice", "CLOSE").get());
+
+            // Same score and board, in the session and in the slot
+            String[] before = played.split(" ");
+            String[] undone = manager.submit("alice", "UNDO").get().split(" ");
+            assertEquals(before[1], undone[1]);
+            assertEquals(Arrays.asList(before).subList(3, before.length), Arrays.asList(undone).subList(3, undone.length));
+            assertEquals(before[1], String.valueOf(store.getScore("alice")));
+
+            String[] loaded = manager.submit("alice", "LOAD").get().split(" ");
+            assertEquals(before[1], loaded[1]);
+            assertEquals(Arrays.asList(before).subList(3, before.length), Arrays.asList(loaded).subList(3, loaded.length));
+        } finally {
+            manager.close();
+            store.close();
+            file.delete();
+        }
+    }
+
+}
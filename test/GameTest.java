@@ -1,3 +1,12 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.jupiter.api.*;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
@@ -275,4 +284,386 @@ public class GameTest {
         assertEquals(4, undoEdge.getTile(3, 2));
     }
 
+    // same seed and same moves give the same game
+    @Test
+    public void seedReplayTest() {
+        GameLogic first = new GameLogic(new SplittableRandom(1), Durability.NONE);
+        GameLogic second = new GameLogic(new SplittableRandom(2), Durability.NONE);
+
+        first.newGame(1234);
+        second.newGame(first.getSeed());
+
+        int[] moves = { 1, 2, 3, 4, 1, 1, 2, 3 };
+        for (int move : moves) {
+            first.moveTiles(move);
+            first.addTile();
+            second.moveTiles(move);
+            second.addTile();
+        }
+
+        assertEquals(1234, second.getSeed());
+        assertArrayEquals(first.getBoard(), second.getBoard());
+        assertEquals(first.getScore(), second.getScore());
+    }
+
+    // moving up, right or down changes the board, left doesn't
+    @Test
+    public void legalMovesTest() {
+        // Test using Board 3
+        int[][] board3 = { { 8, 16, 8, 16 }, 
+                           { 16, 8, 16, 8 }, 
+                           { 8, 16, 8, 16 }, 
+                           { 8, 16, 8, 0 } };
+
+        logic.setBoard(board3);
+
+        assertTrue(logic.hasLegalMove());
+        assertEquals((1 << 1) | (1 << 2) | (1 << 3), logic.legalMoves());
+    }
+
+    // loading replays the saved moves and undos exactly, past a compaction
+    @Test
+    public void loadReplaysJournalTest() {
+        GameLogic played = new GameLogic(new SplittableRandom(5));
+        played.newGame();
+
+        // Solver keeps the game going long enough to compact the journal
+        Solver solver = new Solver(16, 1000);
+        for (int i = 0; i < 400 && played.getGameState() == GameState.STARTED; i++) {
+            if (i % 7 == 0) {
+                played.undoMove();
+            } else if (i % 11 == 0) {
+                played.undoMove();
+                played.undoMove();
+                played.redoMove();
+            } else {
+                played.makeMove(solver.bestMove(played.getPackedBoard(), 1));
+            }
+        }
+
+        assertEquals(GameState.STARTED, played.getGameState());
+
+        // moves are written in the background, make sure they are on disk
+        played.flush();
+        GameLogic loaded = new GameLogic(new SplittableRandom(7));
+        loaded.loadGame();
+
+        assertArrayEquals(played.getBoard(), loaded.getBoard());
+        assertEquals(played.getScore(), loaded.getScore());
+        assertEquals(played.getSeed(), loaded.getSeed());
+
+        // same tiles keep spawning, and undo goes back the same way
+        played.makeMove(1);
+        loaded.makeMove(1);
+        played.undoMove();
+        loaded.undoMove();
+        played.undoMove();
+        loaded.undoMove();
+        assertArrayEquals(played.getBoard(), loaded.getBoard());
+        assertEquals(played.getScore(), loaded.getScore());
+
+        // don't leave writes pending for the next test
+        played.flush();
+        loaded.flush();
+    }
+
+    // fsync writes every move before makeMove returns, none writes nothing
+    @Test
+    public void durabilityTest() {
+        GameLogic synced = new GameLogic(new SplittableRandom(5), Durability.FSYNC);
+        synced.newGame();
+        synced.makeMove(Integer.numberOfTrailingZeros(synced.legalMoves()));
+        assertTrue(GameLogic.fileExist(MoveJournal.DEFAULT_FILE));
+
+        GameLogic loaded = new GameLogic(new SplittableRandom(7), Durability.NONE);
+        loaded.loadGame();
+        assertArrayEquals(synced.getBoard(), loaded.getBoard());
+
+        // ended game deletes the journal right away
+        synced.setBoard(new int[][] { { 2, 4, 2, 4 }, { 4, 2, 4, 2 }, { 2, 4, 2, 4 }, { 4, 2, 4, 2 } });
+        synced.makeMove(1);
+        assertEquals(GameState.LOSS, synced.getGameState());
+        assertFalse(GameLogic.fileExist(MoveJournal.DEFAULT_FILE));
+    }
+
+    // undo stops at the undo depth, redo goes forward until the next move
+    @Test
+    public void undoDepthRedoTest() {
+        GameLogic logic = new GameLogic(new SplittableRandom(3), Durability.NONE, 3);
+        logic.newGame();
+        long[] boards = new long[5];
+        boards[0] = logic.getPackedBoard();
+        for (int i = 1; i < boards.length; i++) {
+            logic.makeMove(Integer.numberOfTrailingZeros(logic.legalMoves()));
+            boards[i] = logic.getPackedBoard();
+        }
+
+        // only the last 3 boards are kept
+        assertTrue(logic.undoMove());
+        assertEquals(boards[3], logic.getPackedBoard());
+        assertTrue(logic.undoMove());
+        assertEquals(boards[2], logic.getPackedBoard());
+        assertTrue(logic.undoMove());
+        assertEquals(boards[2], logic.getPackedBoard());
+
+        assertTrue(logic.redoMove());
+        assertEquals(boards[3], logic.getPackedBoard());
+        assertTrue(logic.redoMove());
+        assertEquals(boards[4], logic.getPackedBoard());
+        assertFalse(logic.redoMove());
+
+        // a new move forgets what could be redone
+        logic.undoMove();
+        logic.makeMove(Integer.numberOfTrailingZeros(logic.legalMoves()));
+        assertFalse(logic.redoMove());
+    }
+
+    // other sizes play, win at their own tile and load with their size
+    @Test
+    public void boardSizeTest() {
+        GameLogic small = new GameLogic(new GameRules(3, 16), new SplittableRandom(1), Durability.NONE,
+                GameLogic.DEFAULT_UNDO_DEPTH);
+        small.newGame();
+        assertEquals(9 - 2, small.emptySpaces().size());
+        small.setBoard(new int[][] { { 8, 8, 0 }, { 0, 0, 0 }, { 0, 0, 0 } });
+        small.makeMove(4);
+        assertEquals(16, small.getTile(0, 0));
+        assertEquals(GameState.WIN, small.getGameState());
+
+        GameLogic played = new GameLogic(new GameRules(6, 4096), new SplittableRandom(5), Durability.FSYNC,
+                GameLogic.DEFAULT_UNDO_DEPTH);
+        played.newGame();
+        for (int i = 0; i < 50 && played.getGameState() == GameState.STARTED; i++) {
+            played.makeMove(i % 10 == 9 ? 1 : Integer.numberOfTrailingZeros(played.legalMoves()));
+        }
+        played.undoMove();
+
+        GameLogic loaded = new GameLogic(new SplittableRandom(7), Durability.NONE);
+        loaded.loadGame();
+        assertEquals(played.getRules(), loaded.getRules());
+        assertArrayEquals(played.getBoard(), loaded.getBoard());
+        assertEquals(played.getScore(), loaded.getScore());
+    }
+
+    // exponents go in and out one byte per tile, for every size
+    @Test
+    public void exponentsTest() {
+        byte[] exponents = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 0, 0, 1, 1 };
+        logic.setExponents(exponents);
+        assertEquals(2048, logic.getTile(2, 3));
+        assertArrayEquals(exponents, logic.getExponents());
+
+        GameLogic large = new GameLogic(new GameRules(5, 2048), new SplittableRandom(1), Durability.NONE,
+                GameLogic.DEFAULT_UNDO_DEPTH);
+        byte[] exponents5 = new byte[25];
+        exponents5[24] = 3;
+        large.setExponents(exponents5);
+        assertEquals(8, large.getTile(4, 4));
+        assertArrayEquals(exponents5, large.getExponents());
+        assertThrows(IllegalArgumentException.class, () -> large.setExponents(exponents));
+    }
+
+    // the loop applies commands in order, the same as calling the logic directly
+    @Test
+    public void gameLoopTest() throws InterruptedException {
+        GameLogic direct = new GameLogic(new SplittableRandom(9), Durability.NONE);
+        final AtomicInteger published = new AtomicInteger();
+        GameLoop loop = new GameLoop(new GameLogic(new SplittableRandom(9), Durability.NONE), new Runnable() {
+            public void run() {
+                published.incrementAndGet();
+            }
+        });
+
+        direct.newGame();
+        assertTrue(loop.submit(GameLoop.NEW_GAME));
+        for (int i = 0; i < 39; i++) {
+            int command = i % 10 == 9 ? GameLoop.UNDO : i % 4 + 1;
+            if (command == GameLoop.UNDO) {
+                direct.undoMove();
+            } else if (direct.getGameState() == GameState.STARTED) {
+                direct.makeMove(command);
+            }
+            assertTrue(loop.submit(command));
+        }
+
+        // wait for the loop to catch up
+        byte[] exponents = new byte[16];
+        long deadline = System.currentTimeMillis() + 5000;
+        do {
+            Thread.sleep(1);
+            loop.getSnapshot().copyExponents(exponents);
+        } while (!Arrays.equals(direct.getExponents(), exponents) && System.currentTimeMillis() < deadline);
+        loop.close();
+
+        BoardSnapshot snapshot = loop.getSnapshot();
+        assertArrayEquals(direct.getExponents(), exponents);
+        assertEquals(direct.getScore(), snapshot.getScore());
+        assertEquals(direct.getGameState(), snapshot.getGameState());
+        assertTrue(published.get() >= 1);
+    }
+
+    // snapshots match the game when taken and never change after
+    @Test
+    public void snapshotTest() throws InterruptedException {
+        final GameLogic logic = new GameLogic(new SplittableRandom(4), Durability.NONE);
+        logic.newGame();
+        BoardSnapshot first = logic.getSnapshot();
+        assertEquals(logic.getPackedBoard(), first.getPackedBoard());
+        assertEquals(GameState.STARTED, first.getGameState());
+
+        // a reader on another thread only ever sees the score go up
+        final AtomicInteger errors = new AtomicInteger();
+        Thread reader = new Thread(new Runnable() {
+            public void run() {
+                int lastScore = 0;
+                while (logic.getSnapshot().getGameState() == GameState.STARTED) {
+                    BoardSnapshot snapshot = logic.getSnapshot();
+                    if (snapshot.getScore() < lastScore) {
+                        errors.incrementAndGet();
+                    }
+                    lastScore = snapshot.getScore();
+                }
+            }
+        });
+        reader.start();
+
+        while (logic.getGameState() == GameState.STARTED) {
+            logic.makeMove(Integer.numberOfTrailingZeros(logic.legalMoves()));
+        }
+        reader.join(5000);
+
+        assertEquals(0, errors.get());
+        assertEquals(logic.getPackedBoard(), logic.getSnapshot().getPackedBoard());
+        assertEquals(logic.getScore(), logic.getSnapshot().getScore());
+        assertEquals(0, first.getScore());
+        assertEquals(GameState.STARTED, first.getGameState());
+    }
+
+    // a recorded game replays to the same boards, scores and spawns
+    @Test
+    public void recordingReplayTest() throws IOException {
+        for (int size : new int[] { 4, 5 }) {
+            GameLogic logic = new GameLogic(new GameRules(size, 2048), new SplittableRandom(size), Durability.NONE,
+                    GameLogic.DEFAULT_UNDO_DEPTH);
+            logic.newGame();
+            for (int i = 0; i < 300 && logic.getGameState() == GameState.STARTED; i++) {
+                if (i % 7 == 6) {
+                    logic.undoMove();
+                } else if (i % 13 == 12) {
+                    logic.redoMove();
+                } else {
+                    logic.makeMove(Integer.numberOfTrailingZeros(logic.legalMoves()));
+                }
+            }
+            GameRecording recording = logic.getRecording().copy();
+
+            GameReplay replay = new GameReplay(recording);
+            assertEquals(recording.getEventCount(), replay.run());
+            assertTrue(replay.isIdentical());
+            assertArrayEquals(logic.getExponents(), replay.getLogic().getExponents());
+            assertEquals(logic.getScore(), replay.getLogic().getScore());
+            assertEquals(logic.getGameState(), replay.getLogic().getGameState());
+
+            // saved recordings replay the same, spawns come from the seed
+            recording.save("test_recording.bin");
+            GameReplay loaded = new GameReplay(GameRecording.load("test_recording.bin", GameLogic.DEFAULT_UNDO_DEPTH));
+            loaded.run();
+            assertTrue(loaded.isIdentical());
+            assertTrue(loaded.getLogic().getRecording().matches(recording));
+            new File("test_recording.bin").delete();
+        }
+    }
+
+    // deleteFile deletes the file it is given and nothing else
+    @Test
+    public void deleteFileTest() throws IOException {
+        File other = new File("test_delete.txt");
+        File state = new File("game_state.txt");
+        boolean hadState = state.exists();
+        other.createNewFile();
+        state.createNewFile();
+        try {
+            new GameLogic(new SplittableRandom(1), Durability.NONE).deleteFile("test_delete.txt");
+            assertFalse(other.exists());
+            assertTrue(state.exists());
+        } finally {
+            other.delete();
+            if (!hadState) {
+                state.delete();
+            }
+        }
+    }
+
+    // replaying a saved game that ends on load saves and submits no best score
+    @Test
+    public void loadReplayNoSideEffectsTest() throws IOException {
+        File journal = new File(MoveJournal.DEFAULT_FILE);
+        File won = new File(MoveJournal.DEFAULT_FILE + ".won");
+        File stats = new File("game_stats.txt");
+        File statsBackup = new File("game_stats.txt.bak");
+        stats.renameTo(statsBackup);
+        try {
+            GameLogic played = new GameLogic(new SplittableRandom(5), Durability.FSYNC);
+            played.newGame();
+            played.setBoard(new int[][] { { 1024, 1024, 0, 0 }, { 0, 0, 0, 0 }, { 0, 0, 0, 0 }, { 0, 0, 0, 2 } });
+            played.writeSnapshot();
+            Files.copy(journal.toPath(), won.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            played.makeMove(4);
+            assertEquals(GameState.WIN, played.getGameState());
+            assertFalse(journal.exists());
+
+            // the won game's journal, as if it was never deleted: the snapshot and the winning move
+            Files.move(won.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.write(journal.toPath(), new byte[] { 4 }, StandardOpenOption.APPEND);
+            stats.delete();
+
+            GameLogic loaded = new GameLogic(new SplittableRandom(7), Durability.FSYNC);
+            Leaderboard leaderboard = new Leaderboard();
+            loaded.setLeaderboard(leaderboard, "alice");
+            loaded.loadGame();
+            assertEquals(GameState.WIN, loaded.getGameState());
+            assertEquals(0, leaderboard.getRank("alice"));
+            assertFalse(stats.exists());
+        } finally {
+            journal.delete();
+            won.delete();
+            stats.delete();
+            statsBackup.renameTo(stats);
+        }
+    }
+
+    // loading a text save keeps it unless a journal took its place
+    @Test
+    public void loadKeepsTextSaveTest() throws IOException {
+        File state = new File("game_state.txt");
+        File journal = new File(MoveJournal.DEFAULT_FILE);
+        File stateBackup = new File("game_state.txt.bak");
+        File journalBackup = new File(MoveJournal.DEFAULT_FILE + ".bak");
+        state.renameTo(stateBackup);
+        journal.renameTo(journalBackup);
+        try {
+            Files.writeString(state.toPath(), "2 0 0 0\n0 4 0 0\n0 0 8 0\n0 0 0 16\n56\n");
+
+            GameLogic unsaved = new GameLogic(new SplittableRandom(1), Durability.NONE);
+            unsaved.loadGame();
+            assertEquals(56, unsaved.getScore());
+            assertEquals(16, unsaved.getTile(3, 3));
+            assertTrue(state.exists());
+
+            GameLogic saved = new GameLogic(new SplittableRandom(1), Durability.ASYNC);
+            saved.loadGame();
+            assertEquals(56, saved.getScore());
+            assertFalse(state.exists());
+            assertTrue(journal.exists());
+
+            // don't leave writes pending for the next test
+            saved.flush();
+        } finally {
+            state.delete();
+            journal.delete();
+            stateBackup.renameTo(state);
+            journalBackup.renameTo(journal);
+        }
+    }
+
 }
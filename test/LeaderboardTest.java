@@ -0,0 +1,97 @@
+import java.io.File;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LeaderboardTest {
+
+    // ranks, percentiles and the top agree with sorting the scores
+    @Test
+    public void rankTest() {
+        Leaderboard leaderboard = new Leaderboard();
+        assertTrue(leaderboard.submit("a", 400));
+        assertTrue(leaderboard.submit("b", 1200));
+        assertTrue(leaderboard.submit("c", 800));
+        assertTrue(leaderboard.submit("d", 800));
+        assertFalse(leaderboard.submit("b", 100)); // lower than b's best
+        assertTrue(leaderboard.submit("a", 2000));
+
+        assertEquals(4, leaderboard.size());
+        assertEquals(1, leaderboard.getRank("a"));
+        assertEquals(2, leaderboard.getRank("b"));
+        assertEquals(3, leaderboard.getRank("c"));
+        assertEquals(3, leaderboard.getRank("d"));
+        assertEquals(0, leaderboard.getRank("nobody"));
+        assertEquals(75.0, leaderboard.getPercentile("a"), 1e-9);
+        assertEquals(0.0, leaderboard.getPercentile("c"), 1e-9);
+        assertEquals(1, leaderboard.getRankOfScore(Leaderboard.MAX_SCORE * 2));
+
+        List<Leaderboard.Entry> top = leaderboard.getTop(3);
+        assertEquals(3, top.size());
+        assertEquals("a", top.get(0).player);
+        assertEquals(1200, top.get(1).score);
+        assertEquals("c", top.get(2).player);
+    }
+
+    // games ending on many threads at once all count once per player
+    @Test
+    public void concurrentSubmitTest() throws InterruptedException {
+        final Leaderboard leaderboard = new Leaderboard();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread(() -> {
+                SplittableRandom rng = new SplittableRandom(seed);
+                for (int i = 0; i < 20_000; i++) {
+                    leaderboard.submit("p" + rng.nextInt(1000), rng.nextInt(10_000) * 4);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1000, leaderboard.size());
+        List<Leaderboard.Entry> all = leaderboard.getTop(2000);
+        assertEquals(1000, all.size());
+        assertEquals(1, leaderboard.getRank(all.get(0).player));
+        assertEquals(0.0, leaderboard.getPercentileOfScore(all.get(999).score), 1e-9);
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).score >= all.get(i).score);
+            assertEquals(all.get(i).score, leaderboard.getBestScore(all.get(i).player));
+        }
+    }
+
+    // a saved leaderboard loads the same, and GameLogic feeds its best scores to it
+    @Test
+    public void saveLoadTest() throws Exception {
+        Leaderboard leaderboard = new Leaderboard();
+        GameLogic game = new GameLogic(new SplittableRandom(4), Durability.NONE);
+        game.setLeaderboard(leaderboard, "local");
+        game.newGame();
+        while (game.getGameState() == GameState.STARTED) {
+            for (int direction = 1; direction <= 4; direction++) {
+                game.makeMove(direction);
+            }
+        }
+        assertEquals(game.getBestScore(), leaderboard.getBestScore("local"));
+        leaderboard.submit("other", 12);
+
+        File file = new File("test_leaderboard.bin");
+        try {
+            leaderboard.save(file.getPath());
+            Leaderboard loaded = Leaderboard.load(file.getPath());
+            assertEquals(2, loaded.size());
+            assertEquals(game.getBestScore(), loaded.getBestScore("local"));
+            assertEquals(12, loaded.getBestScore("other"));
+        } finally {
+            file.delete();
+        }
+        assertEquals(0, Leaderboard.load(file.getPath()).size());
+    }
+
+}
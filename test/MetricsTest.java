@@ -0,0 +1,96 @@
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    // percentiles land within a bucket's width of the real value
+    @Test
+    public void percentileTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(50_000.5, histogram.getMeanNanos(), 1e-9);
+        assertEquals(100_000, histogram.getMaxNanos());
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(100_000, histogram.getPercentile(100));
+        for (double percentile : new double[] { 50, 90, 99, 99.9 }) {
+            long expected = (long) (percentile * 1000);
+            long actual = histogram.getPercentile(percentile);
+            assertTrue(actual >= expected && actual <= expected * 1.125, percentile + ": " + actual);
+        }
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    // small values are exact, huge ones don't overflow a bucket
+    @Test
+    public void extremeValuesTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(3);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getPercentile(30));
+        assertEquals(3, histogram.getPercentile(60));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+    }
+
+    // no record is lost when many threads record at once
+    @Test
+    public void concurrentRecordTest() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 4;
+        final int perThread = 100_000;
+        final CountDownLatch go = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        histogram.record(i % 1000);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals((long) threads * perThread, histogram.getCount());
+        assertEquals(999, histogram.getMaxNanos());
+    }
+
+    // the dump has a line for every timer, timers only time when enabled
+    @Test
+    public void dumpTest() {
+        Metrics.Timer timer = Metrics.getTimers()[0];
+        timer.reset();
+        timer.stop(Metrics.start());
+        assertEquals(Metrics.ENABLED ? 1 : 0, timer.getCount());
+
+        timer.record(42);
+        assertTrue(timer.getCount() > 0);
+
+        String dump = Metrics.dump();
+        for (Metrics.Timer each : Metrics.getTimers()) {
+            assertTrue(dump.contains(each.getName()), each.getName());
+        }
+        timer.reset();
+    }
+
+}
@@ -0,0 +1,34 @@
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimulatorTest {
+
+    // same seed plays the same games, however many threads play them
+    @Test
+    public void reproducibleTest() throws Exception {
+        Simulator single = new Simulator(Simulator.Policy.RANDOM, 1, 42, 1);
+        Simulator multi = new Simulator(Simulator.Policy.RANDOM, 4, 42, 1);
+
+        single.run(50);
+        multi.run(50);
+
+        assertArrayEquals(single.getScores(), multi.getScores());
+        assertEquals(single.getTotalMoves(), multi.getTotalMoves());
+    }
+
+    // every game ends up in the max tile histogram exactly once
+    @Test
+    public void histogramTest() throws Exception {
+        Simulator simulator = new Simulator(Simulator.Policy.GREEDY, 2, 7, 1);
+        simulator.run(20);
+
+        int total = 0;
+        for (int count : simulator.maxTileHistogram()) {
+            total += count;
+        }
+        assertEquals(20, total);
+    }
+
+}
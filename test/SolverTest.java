@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SolverTest {
+
+    Solver solver = new Solver(16, 1000);
+
+    // no move changes the board, so there is nothing to suggest
+    @Test
+    public void noMoveTest() {
+        int[][] board = { { 8, 16, 8, 16 }, 
+                          { 16, 8, 16, 8 }, 
+                          { 8, 16, 8, 16 }, 
+                          { 16, 8, 16, 8 } };
+
+        assertEquals(0, solver.bestMove(board));
+    }
+
+    // only moving right or down changes this board
+    @Test
+    public void onlyLegalMoveTest() {
+        int[][] board = { { 8, 16, 8, 16 }, 
+                          { 16, 8, 16, 8 }, 
+                          { 8, 16, 8, 16 }, 
+                          { 16, 8, 16, 0 } };
+
+        int move = solver.bestMove(board);
+        assertTrue(move == 2 || move == 3);
+    }
+
+    // suggested move always changes the board
+    @Test
+    public void legalMoveTest() {
+        int[][] board = { { 0, 0, 0, 2 }, 
+                          { 0, 0, 0, 4 }, 
+                          { 0, 0, 2, 8 }, 
+                          { 0, 2, 4, 16 } };
+
+        long packed = Bitboard.fromArray(board);
+        int move = solver.bestMove(packed);
+
+        assertNotEquals(packed, Bitboard.move(packed, move));
+        assertTrue(solver.getSearchedDepth() >= 1);
+    }
+
+    // parallel search picks the same move as one thread at the same depth
+    @Test
+    public void parallelSameMoveTest() {
+        int[][] board = { { 2, 8, 32, 256 }, 
+                          { 0, 4, 16, 128 }, 
+                          { 0, 0, 4, 64 }, 
+                          { 0, 0, 2, 8 } };
+
+        Solver parallel = new Solver(16, 1000);
+        parallel.setParallelism(4);
+
+        long packed = Bitboard.fromArray(board);
+        for (int depth = 1; depth <= 3; depth++) {
+            assertEquals(solver.bestMove(packed, depth), parallel.bestMove(packed, depth));
+        }
+    }
+
+    // table only returns values searched to the same depth and number of 4s
+    @Test
+    public void tableDepthTest() {
+        TranspositionTable table = new TranspositionTable(4);
+        table.put(0x1234L, 2, 1, 5f);
+
+        assertEquals(5f, table.get(0x1234L, 2, 1), 0);
+        assertTrue(Float.isNaN(table.get(0x1234L, 3, 1)));
+        assertTrue(Float.isNaN(table.get(0x1234L, 2, 0)));
+        assertTrue(Float.isNaN(table.get(0x4321L, 2, 1)));
+    }
+
+}